@@ -1,8 +1,37 @@
 package fr.anisikram;
 
+import fr.anisikram.control.ControlChannel;
+import fr.anisikram.control.ControlCommand;
+import fr.anisikram.events.RecognitionEvent;
+import fr.anisikram.events.RecognitionEventBus;
+import fr.anisikram.events.RollingFileEventSink;
+import fr.anisikram.events.SocketEventSink;
+import fr.anisikram.faces.EnrollmentWindow;
 import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceQualityScorer;
 import fr.anisikram.faces.FaceRecognizer;
+import fr.anisikram.faces.FaceTracker;
+import fr.anisikram.faces.OnnxEmbeddingEngine;
+import fr.anisikram.faces.RecognitionResult;
+import fr.anisikram.faces.RecognitionScheduler;
+import fr.anisikram.faces.RoiFaceDetector;
+import fr.anisikram.faces.TiledFaceDetector;
+import fr.anisikram.gallery.GalleryCompactor;
+import fr.anisikram.gallery.GalleryFile;
+import fr.anisikram.gallery.GalleryReplica;
+import fr.anisikram.gallery.GalleryReplicationPrimary;
+import fr.anisikram.gallery.GalleryWatcher;
+import fr.anisikram.memory.MatTracker;
+import fr.anisikram.server.MjpegPreviewServer;
+import fr.anisikram.server.RecognitionServer;
+import fr.anisikram.video.AdaptiveCaptureController;
+import fr.anisikram.video.FrameRecorder;
+import fr.anisikram.video.FrameSource;
+import fr.anisikram.video.MotionGate;
+import fr.anisikram.video.ReplayFrameSource;
 import fr.anisikram.video.VideoCapturer;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
 import nu.pattern.OpenCV;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
@@ -12,6 +41,8 @@ import org.opencv.imgproc.Imgproc;
 import org.opencv.core.Scalar;
 import org.opencv.core.Point;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Scanner;
 
@@ -20,24 +51,167 @@ import java.util.Scanner;
  * et la capture vidéo.
  */
 public class Main {
+
+    private static final String MODEL_PATH = "models/face_recognition_sface_2021dec.onnx";
+
+    // Nombre maximal d'images en attente abandonnées d'un coup après une échéance manquée
+    private static final int MAX_STALE_FRAMES = 10;
+
     public static void main(String[] args) {
         // Option pour activer/désactiver la synthèse vocale
         boolean enableSpeech = true; // Activée par défaut
 
+        // Destinations des événements de reconnaissance
+        String eventsFile = null;
+        String eventsSocket = null;
+        String cameraId = "0";
+
+        // Mode service : port HTTP (-1 = mode interactif)
+        int serverPort = -1;
+
+        // Détection par régions d'intérêt : intervalle entre deux analyses complètes (0 = désactivée)
+        int roiInterval = 0;
+
+        // Détection par tuiles en parallèle pour les images de haute résolution : threads (0 = un par cœur, -1 = désactivée)
+        int tiledThreads = -1;
+
+        // Filtre de mouvement : sensibilité (part de pixels changés, négative = désactivé) et saut maximal
+        double motionSensitivity = -1;
+        int maxSkipFrames = 50;
+
+        // Base de données chargée au démarrage et rechargée automatiquement lorsqu'elle est remplacée
+        String watchedDatabase = null;
+
+        // Réplication de la base : port du primaire (-1 = désactivé) ou adresse du primaire à suivre
+        int replicationPort = -1;
+        String primaryAddress = null;
+
+        // Adaptation de la résolution et de la cadence de capture à la latence du traitement
+        boolean adaptiveCapture = false;
+
+        // Extraction des caractéristiques avec ONNX Runtime : threads par opérateur (-1 = moteur OpenCV)
+        int onnxThreads = -1;
+
+        // Mode sans interface graphique : commandes sur l'entrée standard et éventuellement un port TCP (-1 = aucun)
+        boolean headless = false;
+        int controlPort = -1;
+
+        // Aperçu MJPEG : port HTTP local (-1 = désactivé) et cadence maximale
+        int previewPort = -1;
+        double previewFps = 10;
+
+        // Enregistrement des images capturées, ou rejeu d'un enregistrement à la place de la caméra
+        String recordFile = null;
+        String replayFile = null;
+
+        // Score de qualité minimal pour qu'un visage soit transmis à l'extraction (0 = filtre désactivé)
+        // Désactivé par défaut : il rejette des visages reconnus auparavant et peut refuser un enregistrement
+        double qualityThreshold = 0;
+
+        // Échéance de traitement d'une image, en millisecondes (0 = tous les visages de toutes les images)
+        double deadlineMillis = 0;
+
         // Traitement des arguments en ligne de commande
-        for (String arg : args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
             if (arg.equalsIgnoreCase("--no-speech") || arg.equalsIgnoreCase("-ns")) {
                 enableSpeech = false;
                 System.out.println("Synthèse vocale désactivée par argument en ligne de commande.");
+            } else if (arg.equalsIgnoreCase("--events-file") && i + 1 < args.length) {
+                eventsFile = args[++i];
+            } else if (arg.equalsIgnoreCase("--events-socket") && i + 1 < args.length) {
+                eventsSocket = args[++i];
+            } else if (arg.equalsIgnoreCase("--camera-id") && i + 1 < args.length) {
+                cameraId = args[++i];
+            } else if (arg.equalsIgnoreCase("--server")) {
+                serverPort = 8080;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    serverPort = Integer.parseInt(args[++i]);
+                }
+            } else if (arg.equalsIgnoreCase("--roi")) {
+                roiInterval = 10;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    roiInterval = Integer.parseInt(args[++i]);
+                }
+            } else if (arg.equalsIgnoreCase("--tiled")) {
+                tiledThreads = 0;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    tiledThreads = Integer.parseInt(args[++i]);
+                }
+            } else if (arg.equalsIgnoreCase("--motion")) {
+                motionSensitivity = 0.002;
+                if (i + 1 < args.length && args[i + 1].matches("[0-9.]+")) {
+                    motionSensitivity = Double.parseDouble(args[++i]);
+                }
+            } else if (arg.equalsIgnoreCase("--max-skip") && i + 1 < args.length) {
+                maxSkipFrames = Integer.parseInt(args[++i]);
+            } else if (arg.equalsIgnoreCase("--watch") && i + 1 < args.length) {
+                watchedDatabase = args[++i];
+            } else if (arg.equalsIgnoreCase("--replication-port") && i + 1 < args.length) {
+                replicationPort = Integer.parseInt(args[++i]);
+            } else if (arg.equalsIgnoreCase("--replica-of") && i + 1 < args.length) {
+                primaryAddress = args[++i];
+            } else if (arg.equalsIgnoreCase("--adaptive")) {
+                adaptiveCapture = true;
+            } else if (arg.equalsIgnoreCase("--onnx")) {
+                onnxThreads = 0;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    onnxThreads = Integer.parseInt(args[++i]);
+                }
+            } else if (arg.equalsIgnoreCase("--headless")) {
+                headless = true;
+            } else if (arg.equalsIgnoreCase("--control-port") && i + 1 < args.length) {
+                controlPort = Integer.parseInt(args[++i]);
+            } else if (arg.equalsIgnoreCase("--preview")) {
+                previewPort = 8081;
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    previewPort = Integer.parseInt(args[++i]);
+                }
+            } else if (arg.equalsIgnoreCase("--preview-fps") && i + 1 < args.length) {
+                previewFps = Double.parseDouble(args[++i]);
+            } else if (arg.equalsIgnoreCase("--record") && i + 1 < args.length) {
+                recordFile = args[++i];
+            } else if (arg.equalsIgnoreCase("--replay") && i + 1 < args.length) {
+                replayFile = args[++i];
+            } else if (arg.equalsIgnoreCase("--quality") && i + 1 < args.length) {
+                qualityThreshold = Double.parseDouble(args[++i]);
+            } else if (arg.equalsIgnoreCase("--deadline") && i + 1 < args.length) {
+                deadlineMillis = Double.parseDouble(args[++i]);
             } else if (arg.equalsIgnoreCase("--help") || arg.equalsIgnoreCase("-h")) {
                 System.out.println("Options disponibles:");
-                System.out.println("  --no-speech, -ns : Désactiver la synthèse vocale");
-                System.out.println("  --speech, -s     : Activer la synthèse vocale (défaut)");
-                System.out.println("  --help, -h       : Afficher cette aide");
+                System.out.println("  --no-speech, -ns         : Désactiver la synthèse vocale");
+                System.out.println("  --speech, -s             : Activer la synthèse vocale (défaut)");
+                System.out.println("  --events-file <fichier>  : Journaliser les événements dans un fichier tournant");
+                System.out.println("  --events-socket <adr>    : Envoyer les événements vers hôte:port ou unix:chemin");
+                System.out.println("  --camera-id <id>         : Identifiant de caméra inscrit dans les événements");
+                System.out.println("  --server [port]          : Lancer le service HTTP de reconnaissance (8080 par défaut)");
+                System.out.println("  --roi [N]                : Détecter autour des visages précédents, analyse complète toutes les N images (10)");
+                System.out.println("  --tiled [threads]        : Détecter par tuiles en parallèle (images haute résolution, un thread par cœur)");
+                System.out.println("  --motion [sensibilité]   : Ignorer les images sans mouvement (part de pixels changés, 0.002)");
+                System.out.println("  --max-skip <N>           : Nombre maximal d'images ignorées d'affilée (50)");
+                System.out.println("  --watch <base>           : Charger la base et la recharger dès que ses fichiers sont remplacés");
+                System.out.println("  --replication-port <p>   : Diffuser les modifications de la base aux réplicas sur le port local p");
+                System.out.println("  --replica-of <hôte:port> : Suivre la base d'un primaire (enregistrements sur le primaire uniquement)");
+                System.out.println("  --adaptive               : Adapter résolution et cadence de capture à la latence du traitement");
+                System.out.println("  --onnx [threads]         : Extraire les caractéristiques avec ONNX Runtime (threads par opérateur, auto)");
+                System.out.println("  --headless               : Sans interface graphique, commandes lues sur l'entrée standard");
+                System.out.println("  --control-port <port>    : Accepter aussi les commandes sur ce port TCP local (avec --headless)");
+                System.out.println("  --preview [port]         : Diffuser l'image annotée en MJPEG sur http://localhost:port/preview (8081)");
+                System.out.println("  --preview-fps <fps>      : Cadence maximale de l'aperçu (10)");
+                System.out.println("  --record <fichier>       : Enregistrer les images capturées pour les rejouer");
+                System.out.println("  --replay <fichier>       : Rejouer un enregistrement à sa vitesse d'origine au lieu de la caméra");
+                System.out.println("  --quality <seuil>        : Qualité minimale d'un visage avant extraction (désactivé par défaut, 0.3 conseillé)");
+                System.out.println("  --deadline <ms>          : Échéance par image : visages sans identité d'abord, le reste abandonné ou reporté");
+                System.out.println("  --help, -h               : Afficher cette aide");
                 System.exit(0);
             }
         }
 
+        if (primaryAddress != null && watchedDatabase != null) {
+            System.out.println("--watch ignoré : la base d'un réplica suit celle du primaire.");
+            watchedDatabase = null;
+        }
+
         try {
             System.out.println("Initialisation du système de reconnaissance faciale...");
             OpenCV.loadLocally();
@@ -48,20 +222,65 @@ public class Main {
             System.exit(1);
         }
 
-        // Initialisation de la capture vidéo
-        VideoCapturer videoCapturer = new VideoCapturer(0);
+        if (serverPort >= 0) {
+            runServer(serverPort, watchedDatabase, onnxThreads, replicationPort, primaryAddress);
+            return;
+        }
 
-        if (!videoCapturer.isOpened()) {
-            System.err.println("Impossible d'ouvrir la caméra. Vérifiez les connexions et les permissions.");
-            System.exit(1);
+        // Initialisation de la capture vidéo, ou du rejeu d'un enregistrement
+        FrameSource frameSource;
+        if (replayFile != null) {
+            try {
+                frameSource = new ReplayFrameSource(Path.of(replayFile), true);
+            } catch (IOException e) {
+                System.err.println("Impossible de rejouer l'enregistrement : " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        } else {
+            frameSource = new VideoCapturer(0);
+            if (!frameSource.isOpened()) {
+                System.err.println("Impossible d'ouvrir la caméra. Vérifiez les connexions et les permissions.");
+                System.exit(1);
+            }
+        }
+
+        FrameRecorder frameRecorder = null;
+        if (recordFile != null) {
+            try {
+                frameRecorder = new FrameRecorder(Path.of(recordFile));
+                System.out.println("Enregistrement des images dans '" + recordFile + "'.");
+            } catch (IOException e) {
+                System.err.println("Impossible de créer l'enregistrement : " + e.getMessage());
+            }
         }
 
         // Initialisation du détecteur de visages
         FaceDetector faceDetector = new FaceDetector();
+        RoiFaceDetector roiDetector = roiInterval > 0 ? new RoiFaceDetector(faceDetector, roiInterval) : null;
+        TiledFaceDetector tiledDetector = null;
+        if (tiledThreads >= 0) {
+            tiledDetector = tiledThreads > 0 ? new TiledFaceDetector(faceDetector, tiledThreads)
+                    : new TiledFaceDetector(faceDetector);
+            if (roiDetector != null) {
+                System.out.println("Détection par tuiles ignorée : la détection ROI est active.");
+            }
+        }
+
+        AdaptiveCaptureController captureController = null;
+        if (adaptiveCapture && frameSource instanceof VideoCapturer videoCapturer) {
+            captureController = new AdaptiveCaptureController(videoCapturer);
+            captureController.start();
+            // La caméra peut fournir une autre résolution que celle demandée
+            faceDetector.setScale(captureController.getScale());
+        }
 
         // Initialisation du reconnaisseur de visages avec le modèle pré-entraîné
         // Note: Remplacez le chemin par l'emplacement de votre modèle
-        FaceRecognizer faceRecognizer = new FaceRecognizer("models/face_recognition_sface_2021dec.onnx");
+        FaceRecognizer faceRecognizer = createRecognizer(onnxThreads);
+        GalleryWatcher galleryWatcher = watchGallery(faceRecognizer, watchedDatabase);
+        GalleryReplicationPrimary replicationPrimary = startPrimary(faceRecognizer, replicationPort);
+        GalleryReplica galleryReplica = startReplica(faceRecognizer, primaryAddress);
 
         // Initialisation avec l'option d'activation/désactivation
         VoiceSynthesizer voiceSynthesizer = new VoiceSynthesizer(10000, enableSpeech);
@@ -76,15 +295,62 @@ public class Main {
             System.out.println("La synthèse vocale n'est pas disponible ou est désactivée.");
         }
 
-        // Scanner pour lire les entrées utilisateur
-        Scanner scanner = new Scanner(System.in);
+        // Bus d'événements : les abonnés écrivent depuis leurs propres threads
+        RecognitionEventBus eventBus = new RecognitionEventBus();
+        try {
+            if (eventsFile != null) {
+                eventBus.subscribe(new RollingFileEventSink(Path.of(eventsFile)));
+                System.out.println("Événements journalisés dans '" + eventsFile + "'.");
+            }
+            if (eventsSocket != null) {
+                eventBus.subscribe(SocketEventSink.parse(eventsSocket));
+                System.out.println("Événements envoyés vers '" + eventsSocket + "'.");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Impossible d'initialiser la publication des événements : " + e.getMessage());
+        }
+        FaceTracker faceTracker = new FaceTracker();
+        MotionGate motionGate = motionSensitivity >= 0 ? new MotionGate(motionSensitivity, maxSkipFrames) : null;
+        FaceQualityScorer qualityScorer = qualityThreshold > 0 ? new FaceQualityScorer(qualityThreshold) : null;
+        RecognitionScheduler recognitionScheduler = deadlineMillis > 0 ? new RecognitionScheduler(deadlineMillis) : null;
+        EnrollmentWindow enrollmentWindow = new EnrollmentWindow();
+
+        // Entrées utilisateur : Scanner en mode graphique, canal de contrôle sans interface graphique
+        Scanner scanner = null;
+        ControlChannel controlChannel = null;
+        if (headless) {
+            controlChannel = new ControlChannel();
+            controlChannel.listenStandardInput();
+            if (controlPort >= 0) {
+                try {
+                    controlChannel.listenTcp(controlPort);
+                } catch (IOException e) {
+                    System.err.println("Impossible d'ouvrir le canal de contrôle TCP : " + e.getMessage());
+                }
+            }
+            System.out.println("Mode sans interface graphique. Commandes (une par ligne) :");
+            System.out.println(ControlCommand.HELP);
+        } else {
+            scanner = new Scanner(System.in);
+
+            System.out.println("Mode d'utilisation :");
+            System.out.println("1. Appuyez sur 'A' pour ajouter un visage à la base de données");
+            System.out.println("2. Appuyez sur 'L' pour charger une base de données existante");
+            System.out.println("3. Appuyez sur 'S' pour sauvegarder la base de données actuelle");
+            System.out.println("4. Appuyez sur 'V' pour activer/désactiver la synthèse vocale");
+            System.out.println("5. Appuyez sur 'C' pour compacter la base de données en mémoire");
+            System.out.println("6. Appuyez sur 'Échap' pour quitter le programme");
+        }
 
-        System.out.println("Mode d'utilisation :");
-        System.out.println("1. Appuyez sur 'A' pour ajouter un visage à la base de données");
-        System.out.println("2. Appuyez sur 'L' pour charger une base de données existante");
-        System.out.println("3. Appuyez sur 'S' pour sauvegarder la base de données actuelle");
-        System.out.println("4. Appuyez sur 'V' pour activer/désactiver la synthèse vocale");
-        System.out.println("5. Appuyez sur 'Échap' pour quitter le programme");
+        MjpegPreviewServer previewServer = null;
+        if (previewPort >= 0) {
+            try {
+                previewServer = new MjpegPreviewServer(previewPort, previewFps, 70);
+                previewServer.start();
+            } catch (IOException e) {
+                System.err.println("Impossible de démarrer l'aperçu MJPEG : " + e.getMessage());
+            }
+        }
 
         boolean proceed = true;
         String currentName = ""; // Pour stocker temporairement le nom lors de l'ajout d'un visage
@@ -92,30 +358,92 @@ public class Main {
 
         // Boucle principale
         while (proceed) {
-            // Capture d'une image depuis la caméra
-            Mat frame = videoCapturer.getFrame();
+            // Après une échéance manquée, les images en attente sont périmées : on passe à la plus récente
+            if (recognitionScheduler != null && recognitionScheduler.isBehind()) {
+                recognitionScheduler.recordStaleFrames(frameSource.skipStaleFrames(MAX_STALE_FRAMES));
+            }
+
+            // Capture d'une image depuis la caméra ; une image restée en attente date d'avant l'appel
+            long grabTime = System.nanoTime();
+            Mat frame = frameSource.getFrame();
+            long captureTime = frameSource.getFrameNanos() >= 0 ? frameSource.getFrameNanos() : grabTime;
+            if (recognitionScheduler != null) {
+                recognitionScheduler.beginFrame(captureTime);
+            }
+            if (frameRecorder != null && frame != null) {
+                frameRecorder.record(frame, captureTime);
+            }
 
             if (frame != null && !frame.empty()) {
                 // Détection des visages dans l'image
-                List<Rect> faces = faceDetector.detectFaces(frame);
-
-                // Traitement des visages détectés
-                for (Rect face : faces) {
-                    // Extraction du visage depuis l'image
-                    Mat faceMat = faceDetector.extractFace(frame, face, true);
-
-                    if (!faceMat.empty()) {
-                        if (addingFace) {
-                            // Mode ajout de visage
-                            // Affichage d'un message sur l'image
-                            Imgproc.putText(frame, "Ajout de " + currentName + "...",
-                                    new Point(face.x, face.y - 10),
-                                    Imgproc.FONT_HERSHEY_SIMPLEX, 0.8,
-                                    new Scalar(0, 255, 0), 2);
-                        } else {
+                // Sans mouvement ni visage suivi, la détection et la reconnaissance sont ignorées
+                List<Rect> faces;
+                if (motionGate != null && !addingFace
+                        && !motionGate.shouldProcess(frame, !faceTracker.getTracks().isEmpty())) {
+                    faces = List.of();
+                } else {
+                    if (roiDetector != null) {
+                        faces = roiDetector.detectFaces(frame);
+                    } else if (tiledDetector != null) {
+                        faces = tiledDetector.detectFaces(frame);
+                    } else {
+                        faces = faceDetector.detectFaces(frame);
+                    }
+                }
+                List<FaceTracker.Track> tracks = faceTracker.update(faces);
+
+                // Traitement des visages détectés, les plus prioritaires d'abord si une échéance est fixée
+                List<Integer> order = recognitionScheduler != null ? recognitionScheduler.order(faces, tracks) : null;
+                for (int n = 0; n < faces.size(); n++) {
+                    int i = order != null ? order.get(n) : n;
+                    Rect face = faces.get(i);
+                    FaceTracker.Track track = tracks.get(i);
+                    if (eventBus.hasSubscribers()) {
+                        eventBus.publish(RecognitionEvent.detection(track.getId(), face, cameraId));
+                    }
+
+                    // Qualité du visage, mesurée avant toute extraction
+                    FaceQualityScorer.Quality quality = qualityScorer != null ? qualityScorer.evaluate(frame, face) : null;
+
+                    if (addingFace) {
+                        // Mode ajout de visage : le meilleur visage des dernières images sera enregistré
+                        if (i == 0) {
+                            Mat faceMat = FaceDetector.extractFace(frame, face, true);
+                            if (!faceMat.empty()) {
+                                enrollmentWindow.offer(faceMat, quality != null ? quality.score() : 1);
+                            } else {
+                                MatTracker.release(faceMat);
+                            }
+                        }
+
+                        // Affichage d'un message sur l'image
+                        Imgproc.putText(frame, "Ajout de " + currentName + "...",
+                                new Point(face.x, face.y - 10),
+                                Imgproc.FONT_HERSHEY_SIMPLEX, 0.8,
+                                new Scalar(0, 255, 0), 2);
+                    } else if (quality != null && !qualityScorer.accept(quality)) {
+                        // Visage trop petit, flou, mal exposé ou coupé : pas d'extraction,
+                        // on affiche la dernière identité connue de la piste
+                        drawLastIdentity(frame, face, track);
+                    } else if (recognitionScheduler != null && !recognitionScheduler.admit(track.isIdentified())) {
+                        // Plus le temps avant l'échéance : visage abandonné, ou reporté si la piste est identifiée
+                        drawLastIdentity(frame, face, track);
+                    } else {
+                        long recognitionStart = System.nanoTime();
+
+                        // Extraction du visage depuis l'image
+                        Mat faceMat = FaceDetector.extractFace(frame, face, true);
+
+                        if (!faceMat.empty()) {
                             // Mode reconnaissance
                             // Reconnaissance du visage
-                            String personName = faceRecognizer.recognize(faceMat);
+                            RecognitionResult result = faceRecognizer.recognizeWithScore(faceMat);
+                            String personName = result.name();
+                            track.setIdentity(personName, result.score());
+                            if (eventBus.hasSubscribers()) {
+                                eventBus.publish(RecognitionEvent.recognition(track.getId(), face,
+                                        personName, result.score(), cameraId));
+                            }
 
                             // Affichage du nom reconnu sur l'image
                             Scalar textColor = personName.equals("Inconnu") ?
@@ -132,120 +460,386 @@ public class Main {
                             }
                         }
 
-                        faceMat.release(); // Libération de la mémoire
+                        MatTracker.release(faceMat); // Libération de la mémoire
+                        if (recognitionScheduler != null) {
+                            recognitionScheduler.completed(System.nanoTime() - recognitionStart);
+                        }
                     }
                 }
+                if (recognitionScheduler != null) {
+                    recognitionScheduler.endFrame();
+                }
 
                 // Dessin des rectangles autour des visages
                 faceDetector.drawFaceRectangles(frame, faces);
 
                 // Affichage de l'image
-                HighGui.imshow("Reconnaissance Faciale", frame);
-
-                // Gestion des touches clavier
-                int key = HighGui.waitKey(30);
-
-                // Touche Échap pour quitter
-                if (key == 27) {
-                    proceed = false;
+                if (!headless) {
+                    HighGui.imshow("Reconnaissance Faciale", frame);
                 }
-                // Touche 'a' ou 'A' pour ajouter un visage
-                else if (key == 'a' || key == 'A') {
-                    if (!faces.isEmpty() && !addingFace) {
-                        System.out.print("Entrez le nom de la personne : ");
-                        currentName = scanner.nextLine().trim();
-
-                        if (!currentName.isEmpty()) {
-                            addingFace = true;
-                            System.out.println("Positionnez votre visage et appuyez sur ESPACE pour confirmer l'ajout...");
-                        }
-                    } else if (faces.isEmpty()) {
-                        System.out.println("Aucun visage détecté. Veuillez vous positionner face à la caméra.");
+
+                // Ajustement de la capture selon la latence de cette image
+                if (captureController != null && captureController.observe(captureTime, System.nanoTime())) {
+                    // Les positions et tailles de visages dépendent de la résolution
+                    faceDetector.setScale(captureController.getScale());
+                    faceTracker.clear();
+                    if (roiDetector != null) {
+                        roiDetector.reset();
                     }
                 }
-                // Touche ESPACE pour confirmer l'ajout d'un visage
-                else if (key == 32 && addingFace) { // Code ASCII de l'espace
-                    if (!faces.isEmpty()) {
-                        Mat faceMat = faceDetector.extractFace(frame, faces.get(0), true);
 
-                        if (!faceMat.empty()) {
-                            boolean success = faceRecognizer.addFace(faceMat, currentName);
+                // Aperçu MJPEG : encodé sur un autre thread, ignoré sans client
+                if (previewServer != null) {
+                    previewServer.offer(frame);
+                }
 
-                            if (success) {
-                                System.out.println("Visage de '" + currentName + "' ajouté avec succès !");
+                // Commande suivante : touche clavier en mode graphique, canal de contrôle sinon
+                ControlCommand command = headless ? controlChannel.poll() : keyCommand(HighGui.waitKey(30));
+                if (command != null && galleryReplica != null && modifiesGallery(command.type())) {
+                    // Un ajout local serait écrasé par le prochain instantané du primaire
+                    System.out.println("Base en lecture seule sur ce réplica : modifiez-la sur le primaire " + primaryAddress + ".");
+                    command = null;
+                }
+                if (command != null) {
+                    switch (command.type()) {
+                        case QUIT -> proceed = false;
+                        case ADD -> {
+                            if (!faces.isEmpty() && !addingFace) {
+                                currentName = command.argument() != null ? command.argument()
+                                        : prompt(scanner, "Entrez le nom de la personne : ");
+
+                                if (!currentName.isEmpty()) {
+                                    addingFace = true;
+                                    enrollmentWindow.clear();
+                                    System.out.println(headless
+                                            ? "Positionnez le visage et envoyez 'confirm' pour confirmer l'ajout..."
+                                            : "Positionnez votre visage et appuyez sur ESPACE pour confirmer l'ajout...");
+                                }
+                            } else if (faces.isEmpty()) {
+                                System.out.println("Aucun visage détecté. Veuillez vous positionner face à la caméra.");
+                            }
+                        }
+                        case CONFIRM -> {
+                            if (!addingFace) {
+                                System.out.println("Aucun ajout en cours.");
+                            } else if (enrollmentWindow.getBestScore() < 0) {
+                                System.out.println("Aucun visage détecté. Veuillez vous positionner face à la caméra.");
+                            } else if (qualityScorer != null
+                                    && enrollmentWindow.getBestScore() < qualityScorer.getThreshold()) {
+                                System.out.println("Qualité du visage insuffisante (flou, trop petit, mal éclairé ou coupé). "
+                                        + "Veuillez vous rapprocher de la caméra et rester immobile.");
                             } else {
-                                System.out.println("Échec de l'ajout du visage.");
+                                // Meilleur visage des dernières images
+                                Mat faceMat = enrollmentWindow.best();
+                                boolean success = faceRecognizer.addFace(faceMat, currentName);
+
+                                if (success) {
+                                    System.out.println("Visage de '" + currentName + "' ajouté avec succès !");
+                                } else {
+                                    System.out.println("Échec de l'ajout du visage.");
+                                }
+
+                                MatTracker.release(faceMat);
+                                enrollmentWindow.clear();
+                                addingFace = false;
+                                currentName = "";
                             }
-
-                            faceMat.release();
                         }
-
-                        addingFace = false;
-                        currentName = "";
-                    } else {
-                        System.out.println("Aucun visage détecté. Veuillez vous positionner face à la caméra.");
-                    }
-                }
-                // Touche 's' ou 'S' pour sauvegarder la base de données
-                else if (key == 's' || key == 'S') {
-                    System.out.print("Entrez le nom du fichier pour la sauvegarde : ");
-                    String filename = scanner.nextLine().trim();
-
-                    if (!filename.isEmpty()) {
-                        boolean success = faceRecognizer.saveDatabase(filename);
-
-                        if (success) {
-                            System.out.println("Base de données sauvegardée avec succès dans '" + filename + "'.");
-                        } else {
-                            System.out.println("Échec de la sauvegarde de la base de données.");
+                        case SAVE -> {
+                            String filename = command.argument() != null ? command.argument()
+                                    : prompt(scanner, "Entrez le nom du fichier pour la sauvegarde : ");
+
+                            if (!filename.isEmpty()) {
+                                boolean success = faceRecognizer.saveDatabase(filename);
+
+                                if (success) {
+                                    System.out.println("Base de données sauvegardée avec succès dans '" + filename + "'.");
+                                } else {
+                                    System.out.println("Échec de la sauvegarde de la base de données.");
+                                }
+                            }
                         }
-                    }
-                }
-                // Touche 'l' ou 'L' pour charger une base de données
-                else if (key == 'l' || key == 'L') {
-                    System.out.print("Entrez le nom du fichier à charger : ");
-                    String filename = scanner.nextLine().trim();
-
-                    if (!filename.isEmpty()) {
-                        boolean success = faceRecognizer.loadDatabase(filename);
-
-                        if (success) {
-                            System.out.println("Base de données chargée avec succès depuis '" + filename + "'.");
-                        } else {
-                            System.out.println("Échec du chargement de la base de données.");
+                        case LOAD -> {
+                            String filename = command.argument() != null ? command.argument()
+                                    : prompt(scanner, "Entrez le nom du fichier à charger : ");
+
+                            if (!filename.isEmpty()) {
+                                boolean success = faceRecognizer.loadDatabase(filename);
+
+                                if (success) {
+                                    System.out.println("Base de données chargée avec succès depuis '" + filename + "'.");
+                                } else {
+                                    System.out.println("Échec du chargement de la base de données.");
+                                }
+                            }
                         }
-                    }
-                }
-                else if (key == 'v' || key == 'V') {
-                    enableSpeech = !enableSpeech;
-                    voiceSynthesizer.setEnabled(enableSpeech);
-
-                    if (enableSpeech) {
-                        if (!voiceSynthesizer.isInitialized()) {
-                            speechEnabled = voiceSynthesizer.initialize();
-                        } else {
-                            speechEnabled = true;
+                        case COMPACT -> {
+                            if (faceRecognizer.getDatabaseSize() == 0) {
+                                System.out.println("La base de données est vide.");
+                            } else {
+                                faceRecognizer.compact(new GalleryCompactor()).print();
+                            }
                         }
-                        System.out.println("Synthèse vocale activée.");
-                        if (speechEnabled) {
-                            voiceSynthesizer.speak("Synthèse vocale activée");
+                        case SPEECH -> {
+                            enableSpeech = !enableSpeech;
+                            voiceSynthesizer.setEnabled(enableSpeech);
+
+                            if (enableSpeech) {
+                                if (!voiceSynthesizer.isInitialized()) {
+                                    speechEnabled = voiceSynthesizer.initialize();
+                                } else {
+                                    speechEnabled = true;
+                                }
+                                System.out.println("Synthèse vocale activée.");
+                                if (speechEnabled) {
+                                    voiceSynthesizer.speak("Synthèse vocale activée");
+                                }
+                            } else {
+                                System.out.println("Synthèse vocale désactivée.");
+                                speechEnabled = false;
+                            }
                         }
-                    } else {
-                        System.out.println("Synthèse vocale désactivée.");
-                        speechEnabled = false;
                     }
                 }
+            } else if (!frameSource.isOpened()) {
+                // Fin de l'enregistrement rejoué (ou caméra perdue)
+                proceed = false;
             }
+
+            // L'enregistreur et l'aperçu travaillent sur des copies : l'image peut être libérée
+            MatTracker.release(frame);
         }
 
+        if (roiDetector != null) {
+            System.out.println("Détection ROI - " + roiDetector.getStatistics());
+        }
+        if (tiledDetector != null) {
+            System.out.println("Détection par tuiles - " + tiledDetector.getStatistics());
+            tiledDetector.close();
+        }
+        if (recognitionScheduler != null) {
+            System.out.println("Échéance par image - " + recognitionScheduler.getStatistics());
+        }
+        if (captureController != null) {
+            System.out.println("Capture adaptative - " + captureController.getStatistics());
+        }
+        if (motionGate != null) {
+            System.out.println("Filtre de mouvement - " + motionGate.getStatistics());
+            motionGate.release();
+        }
+        if (qualityScorer != null) {
+            System.out.println("Filtre de qualité - " + qualityScorer.getStatistics());
+            qualityScorer.release();
+        }
+        enrollmentWindow.clear();
+
         // Nettoyage et libération des ressources
-        scanner.close();
-        videoCapturer.close();
+        if (previewServer != null) {
+            System.out.println("Aperçu MJPEG - " + previewServer.getStatistics());
+            previewServer.close();
+        }
+        if (scanner != null) {
+            scanner.close();
+        }
+        if (controlChannel != null) {
+            controlChannel.close();
+        }
+        eventBus.close();
+        closeWatcher(galleryWatcher);
+        closeReplication(replicationPrimary, galleryReplica);
+        if (frameRecorder != null) {
+            try {
+                frameRecorder.close();
+                System.out.println("Enregistrement - " + frameRecorder.getStatistics());
+            } catch (IOException e) {
+                System.err.println("Erreur lors de la fermeture de l'enregistrement : " + e.getMessage());
+            }
+        }
+        frameSource.close();
         faceRecognizer.release();
         if (voiceSynthesizer.isInitialized()) {
             voiceSynthesizer.release();
         }
-        HighGui.destroyAllWindows();
+        if (!headless) {
+            HighGui.destroyAllWindows();
+        }
         System.out.println("Programme terminé.");
     }
+
+    /**
+     * Lance le service HTTP de reconnaissance, sans caméra ni interface graphique,
+     * jusqu'à l'arrêt du processus.
+     */
+    private static void runServer(int port, String watchedDatabase, int onnxThreads,
+                                  int replicationPort, String primaryAddress) {
+        FaceRecognizer faceRecognizer = createRecognizer(onnxThreads);
+        GalleryWatcher galleryWatcher = watchGallery(faceRecognizer, watchedDatabase);
+        GalleryReplicationPrimary replicationPrimary = startPrimary(faceRecognizer, replicationPort);
+        GalleryReplica galleryReplica = startReplica(faceRecognizer, primaryAddress);
+        try {
+            RecognitionServer server = new RecognitionServer(port, faceRecognizer);
+            if (galleryReplica != null) {
+                server.setReadOnly(primaryAddress);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                closeWatcher(galleryWatcher);
+                closeReplication(replicationPrimary, galleryReplica);
+                server.close();
+                faceRecognizer.release();
+            }));
+            server.start();
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            System.err.println("Impossible de démarrer le service de reconnaissance : " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Affiche la dernière identité connue de la piste (ou « ? ») sur un visage qui n'est pas reconnu
+     * à cette image.
+     */
+    private static void drawLastIdentity(Mat frame, Rect face, FaceTracker.Track track) {
+        Imgproc.putText(frame, track.isIdentified() ? track.getName() : "?",
+                new Point(face.x, face.y - 10),
+                Imgproc.FONT_HERSHEY_SIMPLEX, 0.8,
+                new Scalar(0, 165, 255), 2);
+    }
+
+    /**
+     * @return true si la commande modifie la base de visages (refusée sur un réplica)
+     */
+    private static boolean modifiesGallery(ControlCommand.Type type) {
+        return switch (type) {
+            case ADD, CONFIRM, LOAD, COMPACT -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Traduit une touche du mode graphique en commande.
+     *
+     * @return La commande, ou null si la touche n'en déclenche aucune
+     */
+    private static ControlCommand keyCommand(int key) {
+        return switch (key) {
+            case 27 -> new ControlCommand(ControlCommand.Type.QUIT, null);  // Échap
+            case 'a', 'A' -> new ControlCommand(ControlCommand.Type.ADD, null);
+            case 32 -> new ControlCommand(ControlCommand.Type.CONFIRM, null);  // Code ASCII de l'espace
+            case 's', 'S' -> new ControlCommand(ControlCommand.Type.SAVE, null);
+            case 'l', 'L' -> new ControlCommand(ControlCommand.Type.LOAD, null);
+            case 'c', 'C' -> new ControlCommand(ControlCommand.Type.COMPACT, null);
+            case 'v', 'V' -> new ControlCommand(ControlCommand.Type.SPEECH, null);
+            default -> null;
+        };
+    }
+
+    private static String prompt(Scanner scanner, String message) {
+        System.out.print(message);
+        return scanner.nextLine().trim();
+    }
+
+    /**
+     * Crée le reconnaisseur avec le moteur OpenCV, ou avec ONNX Runtime si {@code onnxThreads >= 0}.
+     * En cas d'échec du chargement par ONNX Runtime, le moteur OpenCV est utilisé.
+     */
+    private static FaceRecognizer createRecognizer(int onnxThreads) {
+        if (onnxThreads >= 0) {
+            try {
+                return new FaceRecognizer(new OnnxEmbeddingEngine(MODEL_PATH, onnxThreads, 1,
+                        OrtSession.SessionOptions.OptLevel.ALL_OPT), 0.6f);
+            } catch (OrtException e) {
+                System.err.println("Impossible d'initialiser ONNX Runtime, utilisation d'OpenCV : " + e.getMessage());
+            }
+        }
+        return new FaceRecognizer(MODEL_PATH);
+    }
+
+    /**
+     * Charge la base surveillée si elle existe et démarre sa surveillance.
+     *
+     * @return Le surveillant, ou null si aucune base n'est surveillée
+     */
+    private static GalleryWatcher watchGallery(FaceRecognizer faceRecognizer, String database) {
+        if (database == null) {
+            return null;
+        }
+        if (GalleryFile.exists(database)) {
+            faceRecognizer.loadDatabase(database);
+        }
+        try {
+            GalleryWatcher watcher = new GalleryWatcher(database, faceRecognizer::setGallery);
+            watcher.start();
+            return watcher;
+        } catch (IOException e) {
+            System.err.println("Impossible de surveiller la base de données : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Démarre la diffusion des modifications de la base aux réplicas.
+     *
+     * @return Le primaire, ou null si la réplication n'est pas demandée
+     */
+    private static GalleryReplicationPrimary startPrimary(FaceRecognizer faceRecognizer, int port) {
+        if (port < 0) {
+            return null;
+        }
+        try {
+            GalleryReplicationPrimary primary = new GalleryReplicationPrimary(faceRecognizer, port);
+            primary.start();
+            return primary;
+        } catch (IOException e) {
+            System.err.println("Impossible de démarrer la réplication de la base : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Démarre le suivi de la base d'un primaire.
+     *
+     * @return Le réplica, ou null si aucun primaire n'est indiqué
+     */
+    private static GalleryReplica startReplica(FaceRecognizer faceRecognizer, String primaryAddress) {
+        if (primaryAddress == null) {
+            return null;
+        }
+        try {
+            GalleryReplica replica = new GalleryReplica(faceRecognizer, GalleryReplica.parseAddress(primaryAddress));
+            replica.start();
+            return replica;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Impossible de suivre le primaire : " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeReplication(GalleryReplicationPrimary primary, GalleryReplica replica) {
+        if (primary != null) {
+            System.out.println("Réplication (primaire) - " + primary.getStatistics());
+            try {
+                primary.close();
+            } catch (IOException e) {
+                System.err.println("Erreur lors de l'arrêt de la réplication : " + e.getMessage());
+            }
+        }
+        if (replica != null) {
+            System.out.println("Réplication (réplica) - " + replica.getStatistics());
+            replica.close();
+        }
+    }
+
+    private static void closeWatcher(GalleryWatcher watcher) {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            System.err.println("Erreur lors de l'arrêt de la surveillance : " + e.getMessage());
+        }
+    }
 }
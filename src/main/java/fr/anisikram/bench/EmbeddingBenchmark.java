@@ -0,0 +1,137 @@
+package fr.anisikram.bench;
+
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceRecognizer;
+import fr.anisikram.faces.OnnxEmbeddingEngine;
+import fr.anisikram.faces.OpenCvEmbeddingEngine;
+import fr.anisikram.memory.MatTracker;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compare la latence et le débit des moteurs d'extraction sur des images de visages.
+ * La concordance des vecteurs entre les deux moteurs est vérifiée par le test EmbeddingParityTest.
+ *
+ * <pre>
+ * java fr.anisikram.bench.EmbeddingBenchmark [--model chemin.onnx] [--iterations 500]
+ *      [--intra-threads N] [--inter-threads N] [--opt ALL_OPT] [--sweep] image1.jpg [image2.jpg ...]
+ * </pre>
+ */
+public class EmbeddingBenchmark {
+
+    private static final String DEFAULT_MODEL = "models/face_recognition_sface_2021dec.onnx";
+
+    private static final int WARMUP_ITERATIONS = 20;
+
+    public static void main(String[] args) throws OrtException {
+        String modelPath = DEFAULT_MODEL;
+        int iterations = 500;
+        int intraThreads = 0;
+        int interThreads = 1;
+        OrtSession.SessionOptions.OptLevel optLevel = OrtSession.SessionOptions.OptLevel.ALL_OPT;
+        boolean sweep = false;
+        List<String> images = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model" -> modelPath = args[++i];
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--intra-threads" -> intraThreads = Integer.parseInt(args[++i]);
+                case "--inter-threads" -> interThreads = Integer.parseInt(args[++i]);
+                case "--opt" -> optLevel = OrtSession.SessionOptions.OptLevel.valueOf(args[++i]);
+                case "--sweep" -> sweep = true;
+                default -> images.add(args[i]);
+            }
+        }
+        if (images.isEmpty()) {
+            System.out.println("Usage : EmbeddingBenchmark [--model chemin.onnx] [--iterations 500] "
+                    + "[--intra-threads N] [--inter-threads N] [--opt ALL_OPT] [--sweep] <image> [image ...]");
+            System.exit(1);
+        }
+
+        OpenCV.loadLocally();
+        List<Mat> faces = loadFaces(images);
+        if (faces.isEmpty()) {
+            System.err.println("Aucune image exploitable.");
+            System.exit(1);
+        }
+
+        FaceRecognizer reference = new FaceRecognizer(new OpenCvEmbeddingEngine(modelPath, ""), 0.6f);
+        FaceRecognizer onnx = new FaceRecognizer(
+                new OnnxEmbeddingEngine(modelPath, intraThreads, interThreads, optLevel), 0.6f);
+
+        System.out.println("=== Latence par visage (" + iterations + " extractions) ===");
+        benchmark("opencv", reference, faces, iterations);
+        benchmark("onnxruntime", onnx, faces, iterations);
+        reference.release();
+        onnx.release();
+
+        // Balayage du nombre de threads internes aux opérateurs
+        if (sweep) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                FaceRecognizer engine = new FaceRecognizer(
+                        new OnnxEmbeddingEngine(modelPath, threads, interThreads, optLevel), 0.6f);
+                benchmark("onnxruntime intra=" + threads, engine, faces, iterations);
+                engine.release();
+            }
+        }
+
+        faces.forEach(MatTracker::release);
+    }
+
+    /**
+     * Charge les images et en extrait le premier visage détecté (l'image entière si aucun visage n'est trouvé).
+     */
+    private static List<Mat> loadFaces(List<String> paths) {
+        FaceDetector faceDetector = new FaceDetector();
+        List<Mat> faces = new ArrayList<>();
+        for (String path : paths) {
+            Mat image = Imgcodecs.imread(path, Imgcodecs.IMREAD_COLOR);
+            if (image.empty()) {
+                System.err.println("Image illisible : " + path);
+                continue;
+            }
+            List<Rect> detected = faceDetector.detectFaces(image);
+            if (detected.isEmpty()) {
+                faces.add(image);
+            } else {
+                faces.add(FaceDetector.extractFace(image, detected.getFirst(), true));
+                image.release();
+            }
+        }
+        return faces;
+    }
+
+    private static void benchmark(String label, FaceRecognizer recognizer, List<Mat> faces, int iterations) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            recognizer.extractFeature(faces.get(i % faces.size()));
+        }
+
+        long[] latencies = new long[iterations];
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            recognizer.extractFeature(faces.get(i % faces.size()));
+            latencies[i] = System.nanoTime() - t0;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+
+        System.out.printf(Locale.ROOT, "%-22s p50 %6.2f ms  p99 %6.2f ms  débit %7.1f visages/s%n",
+                label, percentile(latencies, 0.50), percentile(latencies, 0.99), iterations / seconds);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,124 @@
+package fr.anisikram.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Injecteur de charge pour {@link RecognitionServer} : envoie la même image en boucle depuis
+ * N clients concurrents pendant une durée donnée, puis affiche le débit et les percentiles de latence.
+ *
+ * <pre>
+ * java fr.anisikram.bench.LoadTest http://localhost:8080/recognize visage.jpg [clients] [durée en s]
+ * </pre>
+ */
+public class LoadTest {
+
+    /**
+     * Latences d'un client, dans un tableau agrandi au besoin : aucune mesure n'est perdue
+     * quelle que soit la durée du test.
+     */
+    private static final class Latencies {
+        private long[] values = new long[1 << 12];
+        private int count;
+
+        void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[count++] = nanos;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage : LoadTest <url> <image> [clients=16] [durée en secondes=30]");
+            System.exit(1);
+        }
+        URI uri = URI.create(args[0]);
+        byte[] image = Files.readAllBytes(Path.of(args[1]));
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int durationSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(image))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+
+        // Préchauffage : quelques requêtes séquentielles non mesurées
+        for (int i = 0; i < 5; i++) {
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+        }
+
+        AtomicLong errors = new AtomicLong();
+        List<Latencies> perClientLatencies = new ArrayList<>();
+        long deadline = System.nanoTime() + Duration.ofSeconds(durationSeconds).toNanos();
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                Latencies latencies = new Latencies();
+                perClientLatencies.add(latencies);
+                executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        latencies.add(System.nanoTime() - t0);
+                    }
+                    return null;
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        int total = perClientLatencies.stream().mapToInt(latencies -> latencies.count).sum();
+        long[] all = new long[total];
+        int offset = 0;
+        for (Latencies latencies : perClientLatencies) {
+            System.arraycopy(latencies.values, 0, all, offset, latencies.count);
+            offset += latencies.count;
+        }
+        Arrays.sort(all);
+
+        System.out.println("=== Résultats du test de charge ===");
+        System.out.println("URL              : " + uri);
+        System.out.println("Clients          : " + clients);
+        System.out.println("Durée            : " + String.format("%.1f s", elapsedSeconds));
+        System.out.println("Requêtes réussies: " + total + " (erreurs : " + errors.get() + ")");
+        System.out.println("Débit            : " + String.format("%.1f req/s", total / elapsedSeconds));
+        if (total > 0) {
+            System.out.println("Latence p50      : " + String.format("%.1f ms", percentile(all, 0.50)));
+            System.out.println("Latence p99      : " + String.format("%.1f ms", percentile(all, 0.99)));
+            System.out.println("Latence max      : " + String.format("%.1f ms", all[all.length - 1] / 1e6));
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,86 @@
+package fr.anisikram.bench;
+
+import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceTracker;
+import fr.anisikram.faces.RoiFaceDetector;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.videoio.VideoCapture;
+
+import java.util.List;
+
+/**
+ * Compare la détection par régions d'intérêt à la détection sur l'image entière sur des vidéos
+ * enregistrées : temps de détection économisé et taux de visages manqués.
+ *
+ * <pre>
+ * java fr.anisikram.bench.RoiBenchmark [--interval N] clip1.mp4 [clip2.mp4 ...]
+ * </pre>
+ */
+public class RoiBenchmark {
+
+    public static void main(String[] args) {
+        int interval = 10;
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("--interval")) {
+            interval = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (args.length <= first) {
+            System.out.println("Usage : RoiBenchmark [--interval N] <vidéo> [vidéo ...]");
+            System.exit(1);
+        }
+
+        OpenCV.loadLocally();
+        FaceDetector faceDetector = new FaceDetector();
+
+        long totalFrames = 0;
+        long referenceFaces = 0;
+        long missedFaces = 0;
+        long fullNanos = 0;
+        long roiNanos = 0;
+
+        for (int i = first; i < args.length; i++) {
+            VideoCapture clip = new VideoCapture(args[i]);
+            if (!clip.isOpened()) {
+                System.err.println("Impossible d'ouvrir la vidéo : " + args[i]);
+                continue;
+            }
+            RoiFaceDetector roiDetector = new RoiFaceDetector(faceDetector, interval);
+            Mat frame = new Mat();
+            while (clip.read(frame) && !frame.empty()) {
+                long t0 = System.nanoTime();
+                List<Rect> reference = faceDetector.detectFaces(frame);
+                long t1 = System.nanoTime();
+                List<Rect> roiFaces = roiDetector.detectFaces(frame);
+                long t2 = System.nanoTime();
+
+                fullNanos += t1 - t0;
+                roiNanos += t2 - t1;
+                totalFrames++;
+                referenceFaces += reference.size();
+                for (Rect face : reference) {
+                    if (roiFaces.stream().noneMatch(r -> FaceTracker.iou(r, face) >= 0.5)) {
+                        missedFaces++;
+                    }
+                }
+            }
+            frame.release();
+            clip.release();
+            System.out.println(args[i] + " : " + roiDetector.getStatistics());
+        }
+
+        if (totalFrames == 0) {
+            System.err.println("Aucune image analysée.");
+            System.exit(1);
+        }
+        System.out.println("=== Détection ROI (analyse complète toutes les " + interval + " images) ===");
+        System.out.println("Images analysées       : " + totalFrames);
+        System.out.printf("Temps moyen plein cadre : %.2f ms%n", fullNanos / 1e6 / totalFrames);
+        System.out.printf("Temps moyen ROI         : %.2f ms%n", roiNanos / 1e6 / totalFrames);
+        System.out.printf("Temps économisé         : %.1f %%%n", 100.0 * (fullNanos - roiNanos) / fullNanos);
+        System.out.printf("Taux de visages manqués : %.2f %% (%d / %d)%n",
+                referenceFaces == 0 ? 0 : 100.0 * missedFaces / referenceFaces, missedFaces, referenceFaces);
+    }
+}
@@ -0,0 +1,171 @@
+package fr.anisikram.bench;
+
+import fr.anisikram.gallery.GalleryMatch;
+import fr.anisikram.gallery.GalleryShard;
+import fr.anisikram.gallery.GalleryShardServer;
+import fr.anisikram.gallery.LocalGalleryShard;
+import fr.anisikram.gallery.RemoteGalleryShard;
+import fr.anisikram.gallery.ShardedGallery;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mesure le débit de recherche d'une {@link ShardedGallery} de 1 à N partitions sur une même
+ * machine, avec des partitions en mémoire ou dans des JVM séparées ({@code --process}).
+ * La galerie est synthétique : des identités aléatoires et quelques variations bruitées de chacune.
+ *
+ * <pre>
+ * java fr.anisikram.bench.ShardBenchmark [--process] [--max-shards 4] [--identities 20000]
+ *      [--per-identity 5] [--queries 5000] [--clients 16] [--timeout 200]
+ * </pre>
+ */
+public class ShardBenchmark {
+
+    private static final int DIMENSION = 128;
+
+    public static void main(String[] args) throws Exception {
+        boolean separateProcesses = false;
+        int maxShards = Runtime.getRuntime().availableProcessors();
+        int identities = 20000;
+        int perIdentity = 5;
+        int queries = 5000;
+        int clients = 16;
+        long timeoutMillis = 200;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--process" -> separateProcesses = true;
+                case "--max-shards" -> maxShards = Integer.parseInt(args[++i]);
+                case "--identities" -> identities = Integer.parseInt(args[++i]);
+                case "--per-identity" -> perIdentity = Integer.parseInt(args[++i]);
+                case "--queries" -> queries = Integer.parseInt(args[++i]);
+                case "--clients" -> clients = Integer.parseInt(args[++i]);
+                case "--timeout" -> timeoutMillis = Long.parseLong(args[++i]);
+                default -> {
+                    System.out.println("Option inconnue : " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        Random random = new Random(42);
+        float[][] centers = new float[identities][];
+        for (int i = 0; i < identities; i++) {
+            centers[i] = randomVector(random);
+        }
+
+        System.out.printf("Galerie : %d identités x %d vecteurs, %d requêtes, %d clients, partitions %s%n",
+                identities, perIdentity, queries, clients, separateProcesses ? "dans des JVM séparées" : "en mémoire");
+        System.out.println("partitions | enrôlement (vec/s) | débit (req/s) | p50 (ms) | p99 (ms) | top-1 | délais dépassés");
+
+        for (int shardCount = 1; shardCount <= maxShards; shardCount++) {
+            List<Process> processes = new ArrayList<>();
+            List<GalleryShard> shards = new ArrayList<>();
+            for (int s = 0; s < shardCount; s++) {
+                if (separateProcesses) {
+                    Process process = startShardProcess();
+                    processes.add(process);
+                    shards.add(new RemoteGalleryShard("127.0.0.1", readPort(process)));
+                } else {
+                    shards.add(new LocalGalleryShard());
+                }
+            }
+
+            try (ShardedGallery gallery = new ShardedGallery(shards, timeoutMillis)) {
+                long enrollStart = System.nanoTime();
+                Random noise = new Random(7);
+                for (int i = 0; i < identities; i++) {
+                    for (int j = 0; j < perIdentity; j++) {
+                        gallery.add("personne-" + i, perturb(centers[i], noise, 0.3f));
+                    }
+                }
+                double enrollRate = identities * perIdentity / ((System.nanoTime() - enrollStart) / 1e9);
+
+                // Préchauffage
+                for (int i = 0; i < 200; i++) {
+                    gallery.search(centers[i % identities], 5);
+                }
+
+                long[] latencies = new long[queries];
+                AtomicInteger next = new AtomicInteger();
+                AtomicInteger correct = new AtomicInteger();
+                int totalQueries = queries;
+                int totalIdentities = identities;
+                long start = System.nanoTime();
+                try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (int c = 0; c < clients; c++) {
+                        long seed = c;
+                        executor.submit(() -> {
+                            Random queryNoise = new Random(seed);
+                            int q;
+                            while ((q = next.getAndIncrement()) < totalQueries) {
+                                int identity = q % totalIdentities;
+                                float[] query = perturb(centers[identity], queryNoise, 0.3f);
+                                long t0 = System.nanoTime();
+                                List<GalleryMatch> matches = gallery.search(query, 5);
+                                latencies[q] = System.nanoTime() - t0;
+                                if (!matches.isEmpty() && matches.getFirst().name().equals("personne-" + identity)) {
+                                    correct.incrementAndGet();
+                                }
+                            }
+                            return null;
+                        });
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                Arrays.sort(latencies);
+
+                System.out.printf("%10d | %18.0f | %13.0f | %8.2f | %8.2f | %5.1f%% | %d%n",
+                        shardCount, enrollRate, queries / seconds,
+                        latencies[queries / 2] / 1e6, latencies[(int) (queries * 0.99)] / 1e6,
+                        100.0 * correct.get() / queries, gallery.getShardTimeouts());
+            } finally {
+                processes.forEach(Process::destroy);
+            }
+        }
+    }
+
+    private static Process startShardProcess() throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                GalleryShardServer.class.getName(), "0")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private static int readPort(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("SHARD_PORT ")) {
+                return Integer.parseInt(line.substring("SHARD_PORT ".length()).trim());
+            }
+        }
+        throw new IOException("Le processus de partition s'est arrêté sans annoncer son port");
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return LocalGalleryShard.normalize(vector);
+    }
+
+    private static float[] perturb(float[] center, Random random, float amount) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = center[i] + amount * (float) random.nextGaussian() / (float) Math.sqrt(DIMENSION);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,109 @@
+package fr.anisikram.bench;
+
+import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceTracker;
+import fr.anisikram.faces.TiledFaceDetector;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare la détection par tuiles à la détection sur l'image entière, pour un nombre de threads
+ * croissant : latence, accélération et visages manqués. Les images sont agrandies à la largeur
+ * demandée (4K par défaut) pour reproduire une caméra haute résolution.
+ *
+ * <pre>
+ * java fr.anisikram.bench.TiledBenchmark [--width 3840] [--iterations 5] image1.jpg [image2.jpg ...]
+ * </pre>
+ */
+public class TiledBenchmark {
+
+    public static void main(String[] args) {
+        int width = 3840;
+        int iterations = 5;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                default -> paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            System.out.println("Usage : TiledBenchmark [--width 3840] [--iterations 5] <image> [image ...]");
+            System.exit(1);
+        }
+
+        OpenCV.loadLocally();
+        FaceDetector faceDetector = new FaceDetector();
+        List<Mat> images = new ArrayList<>();
+        for (String path : paths) {
+            Mat image = Imgcodecs.imread(path, Imgcodecs.IMREAD_COLOR);
+            if (image.empty()) {
+                System.err.println("Image illisible : " + path);
+                continue;
+            }
+            Mat scaled = new Mat();
+            double scale = (double) width / image.cols();
+            Imgproc.resize(image, scaled, new Size(), scale, scale, Imgproc.INTER_LINEAR);
+            image.release();
+            images.add(scaled);
+        }
+        if (images.isEmpty()) {
+            System.err.println("Aucune image exploitable.");
+            System.exit(1);
+        }
+
+        // Référence : cascade sur l'image entière, sur un seul thread
+        List<List<Rect>> reference = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            reference.clear();
+            for (Mat image : images) {
+                reference.add(faceDetector.detectFaces(image));
+            }
+        }
+        double fullMillis = (System.nanoTime() - start) / 1e6 / iterations / images.size();
+        long referenceFaces = reference.stream().mapToLong(List::size).sum();
+
+        System.out.println("=== Détection par tuiles (" + images.getFirst().cols() + "x" + images.getFirst().rows() + ") ===");
+        System.out.printf("%-22s %10.1f ms  %d visages%n", "image entière", fullMillis, referenceFaces);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(threads * 2, cores) : threads + 1) {
+            try (TiledFaceDetector tiledDetector = new TiledFaceDetector(faceDetector, threads)) {
+                // Première passe hors mesure : chargement des cascades de chaque thread
+                List<List<Rect>> tiled = new ArrayList<>();
+                for (Mat image : images) {
+                    tiled.add(tiledDetector.detectFaces(image));
+                }
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    for (Mat image : images) {
+                        tiledDetector.detectFaces(image);
+                    }
+                }
+                double tiledMillis = (System.nanoTime() - start) / 1e6 / iterations / images.size();
+
+                long missed = 0;
+                long extra = 0;
+                for (int i = 0; i < images.size(); i++) {
+                    missed += unmatched(reference.get(i), tiled.get(i));
+                    extra += unmatched(tiled.get(i), reference.get(i));
+                }
+                System.out.printf("%-22s %10.1f ms  accélération x%.2f, manqués %d, en plus %d%n",
+                        "tuiles, " + threads + " thread(s)", tiledMillis, fullMillis / tiledMillis, missed, extra);
+            }
+        }
+        images.forEach(Mat::release);
+    }
+
+    private static long unmatched(List<Rect> faces, List<Rect> others) {
+        return faces.stream().filter(face -> others.stream().noneMatch(o -> FaceTracker.iou(o, face) >= 0.5)).count();
+    }
+}
@@ -0,0 +1,114 @@
+package fr.anisikram.control;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Canal de contrôle du mode sans interface graphique : des commandes textuelles, une par ligne,
+ * lues sur l'entrée standard et/ou sur un port TCP local. Les commandes sont lues sur des threads
+ * dédiés et mises en file ; la boucle principale les consomme sans jamais attendre.
+ */
+public class ControlChannel implements AutoCloseable {
+
+    private final ConcurrentLinkedQueue<ControlCommand> commands = new ConcurrentLinkedQueue<>();
+    private ServerSocket serverSocket;
+
+    /**
+     * Lit les commandes sur l'entrée standard.
+     */
+    public void listenStandardInput() {
+        startThread("control-stdin", () -> read(System.in, null));
+    }
+
+    /**
+     * Accepte des connexions TCP sur l'interface locale ; chaque client envoie une commande par ligne
+     * et reçoit une ligne {@code OK} ou {@code ERREUR ...} en retour.
+     *
+     * @param port Port d'écoute (0 = port libre choisi par le système)
+     */
+    public void listenTcp(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 4, InetAddress.getLoopbackAddress());
+        System.out.println("Canal de contrôle à l'écoute sur le port " + serverSocket.getLocalPort());
+        startThread("control-accept", () -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket client = serverSocket.accept();
+                    Thread.ofVirtual().start(() -> serve(client));
+                } catch (IOException e) {
+                    // Fermeture du canal
+                }
+            }
+        });
+    }
+
+    private void serve(Socket client) {
+        try (client) {
+            PrintWriter replies = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8);
+            read(client.getInputStream(), replies);
+        } catch (IOException e) {
+            System.err.println("Client de contrôle déconnecté : " + e.getMessage());
+        }
+    }
+
+    private void read(InputStream input, PrintWriter replies) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    commands.add(ControlCommand.parse(line));
+                    if (replies != null) {
+                        replies.println("OK");
+                    }
+                } catch (IllegalArgumentException e) {
+                    if (replies != null) {
+                        replies.println("ERREUR " + e.getMessage());
+                    } else {
+                        System.out.println(e.getMessage() + System.lineSeparator() + ControlCommand.HELP);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur de lecture du canal de contrôle : " + e.getMessage());
+        }
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return La prochaine commande en attente, ou null s'il n'y en a pas
+     */
+    public ControlCommand poll() {
+        return commands.poll();
+    }
+
+    public int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                System.err.println("Erreur lors de la fermeture du canal de contrôle : " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package fr.anisikram.control;
+
+import java.util.Locale;
+
+/**
+ * Commande reçue par le canal de contrôle, équivalente à une touche du mode graphique.
+ *
+ * @param type Action demandée
+ * @param argument Nom de personne ou de fichier (null si l'action n'en prend pas, ou s'il doit être demandé)
+ */
+public record ControlCommand(Type type, String argument) {
+
+    public enum Type {
+        ADD,
+        CONFIRM,
+        SAVE,
+        LOAD,
+        COMPACT,
+        SPEECH,
+        QUIT
+    }
+
+    public static final String HELP = String.join(System.lineSeparator(),
+            "  add <nom>       : Préparer l'ajout du visage de <nom>",
+            "  confirm         : Confirmer l'ajout du visage visible",
+            "  save <fichier>  : Sauvegarder la base de données",
+            "  load <fichier>  : Charger une base de données",
+            "  compact         : Compacter la base de données en mémoire",
+            "  speech          : Activer/désactiver la synthèse vocale",
+            "  quit            : Quitter le programme");
+
+    /**
+     * Analyse une ligne de commande textuelle.
+     *
+     * @param line Ligne reçue, par exemple {@code add Alice}
+     * @return La commande
+     * @throws IllegalArgumentException si la commande est inconnue ou incomplète
+     */
+    public static ControlCommand parse(String line) {
+        String trimmed = line.trim();
+        int space = trimmed.indexOf(' ');
+        String verb = (space < 0 ? trimmed : trimmed.substring(0, space)).toLowerCase(Locale.ROOT);
+        String argument = space < 0 ? null : trimmed.substring(space + 1).trim();
+
+        Type type = switch (verb) {
+            case "add" -> Type.ADD;
+            case "confirm" -> Type.CONFIRM;
+            case "save" -> Type.SAVE;
+            case "load" -> Type.LOAD;
+            case "compact" -> Type.COMPACT;
+            case "speech" -> Type.SPEECH;
+            case "quit", "exit" -> Type.QUIT;
+            default -> throw new IllegalArgumentException("Commande inconnue : " + verb);
+        };
+        boolean needsArgument = type == Type.ADD || type == Type.SAVE || type == Type.LOAD;
+        if (needsArgument && (argument == null || argument.isEmpty())) {
+            throw new IllegalArgumentException("Argument manquant pour la commande " + verb);
+        }
+        return new ControlCommand(type, needsArgument ? argument : null);
+    }
+}
@@ -0,0 +1,23 @@
+package fr.anisikram.events;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination des événements de reconnaissance. Les événements sont toujours livrés par lots,
+ * depuis le thread dédié de l'abonnement et jamais depuis le thread vidéo.
+ */
+public interface EventSink extends AutoCloseable {
+
+    /**
+     * Écrit un lot d'événements.
+     *
+     * @param batch Lot d'événements, dans l'ordre de publication
+     * @throws IOException si l'écriture échoue (le lot est alors compté comme perdu)
+     */
+    void write(List<RecognitionEvent> batch) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,160 @@
+package fr.anisikram.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Abonnement asynchrone au bus d'événements. Chaque abonnement possède un tampon borné et
+ * un thread qui regroupe les événements en lots avant de les transmettre à son {@link EventSink}.
+ */
+public class EventSubscription {
+
+    private final EventSink sink;
+    private final BlockingQueue<RecognitionEvent> queue;
+    private final int maxBatchSize;
+    private final long maxBatchDelayMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread worker;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    EventSubscription(EventSink sink, int capacity, int maxBatchSize, long maxBatchDelayMillis,
+                      OverflowPolicy overflowPolicy) {
+        if (capacity <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("La capacité et la taille de lot doivent être positives");
+        }
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.worker = new Thread(this::run, "event-sink-" + sink.getClass().getSimpleName());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Dépose un événement dans le tampon sans jamais bloquer.
+     */
+    void offer(RecognitionEvent event) {
+        if (!running) {
+            return;
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            // Le consommateur peut vider le tampon entre-temps : dans ce cas poll() renvoie null
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+            if (!queue.offer(event)) {
+                dropped.incrementAndGet();
+            }
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void run() {
+        List<RecognitionEvent> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                RecognitionEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Attente d'autres événements jusqu'à remplir le lot ou dépasser le délai
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    RecognitionEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                deliver(batch);
+            } catch (InterruptedException e) {
+                // Arrêt demandé : on vide ce qui reste avant de sortir
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        List<RecognitionEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            deliver(remaining);
+        }
+    }
+
+    private void deliver(List<RecognitionEvent> batch) {
+        try {
+            sink.write(batch);
+            delivered.addAndGet(batch.size());
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            dropped.addAndGet(batch.size());
+            System.err.println("Erreur lors de l'écriture des événements (" + batch.size() + " perdus): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Arrête l'abonnement après avoir livré les événements encore en tampon.
+     *
+     * @param timeoutMillis Temps maximal d'attente du thread de livraison
+     */
+    void close(long timeoutMillis) {
+        running = false;
+        try {
+            worker.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            worker.interrupt();
+        }
+        try {
+            sink.close();
+        } catch (Exception e) {
+            System.err.println("Erreur lors de la fermeture de la destination d'événements: " + e.getMessage());
+        }
+    }
+
+    public EventSink getSink() {
+        return sink;
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+}
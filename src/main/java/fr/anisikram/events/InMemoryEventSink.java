@@ -0,0 +1,55 @@
+package fr.anisikram.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Destination conservant les événements en mémoire, destinée aux tests et aux outils de mesure.
+ */
+public class InMemoryEventSink implements EventSink {
+
+    private final List<RecognitionEvent> events = new ArrayList<>();
+    private int batches;
+
+    @Override
+    public synchronized void write(List<RecognitionEvent> batch) {
+        events.addAll(batch);
+        batches++;
+        notifyAll();
+    }
+
+    /**
+     * @return Une copie des événements reçus
+     */
+    public synchronized List<RecognitionEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    public synchronized int getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * Attend qu'au moins {@code count} événements aient été reçus.
+     *
+     * @param count Nombre d'événements attendus
+     * @param timeoutMillis Délai maximal d'attente
+     * @return true si le nombre d'événements a été atteint à temps
+     */
+    public synchronized boolean awaitEvents(int count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (events.size() < count) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public synchronized void clear() {
+        events.clear();
+        batches = 0;
+    }
+}
@@ -0,0 +1,12 @@
+package fr.anisikram.events;
+
+/**
+ * Comportement d'un abonnement lorsque son tampon est plein. Aucune politique ne bloque
+ * l'éditeur : un consommateur lent ne doit jamais ralentir le pipeline vidéo.
+ */
+public enum OverflowPolicy {
+    // Le nouvel événement est abandonné
+    DROP_NEWEST,
+    // L'événement le plus ancien du tampon est abandonné au profit du nouveau
+    DROP_OLDEST
+}
@@ -0,0 +1,82 @@
+package fr.anisikram.events;
+
+import org.opencv.core.Rect;
+
+/**
+ * Événement de détection ou de reconnaissance publié par le pipeline vidéo.
+ *
+ * @param type Nature de l'événement
+ * @param trackId Identifiant de la piste du visage (stable tant que le visage reste visible)
+ * @param name Nom reconnu (null pour une simple détection)
+ * @param score Score de similarité de la reconnaissance (-1 pour une simple détection)
+ * @param timestamp Horodatage en millisecondes depuis l'epoch
+ * @param cameraId Identifiant de la caméra source
+ * @param x Abscisse du rectangle du visage
+ * @param y Ordonnée du rectangle du visage
+ * @param width Largeur du rectangle du visage
+ * @param height Hauteur du rectangle du visage
+ */
+public record RecognitionEvent(Type type, long trackId, String name, double score, long timestamp,
+                               String cameraId, int x, int y, int width, int height) {
+
+    public enum Type {
+        DETECTION,
+        RECOGNITION
+    }
+
+    public static RecognitionEvent detection(long trackId, Rect face, String cameraId) {
+        return new RecognitionEvent(Type.DETECTION, trackId, null, -1, System.currentTimeMillis(),
+                cameraId, face.x, face.y, face.width, face.height);
+    }
+
+    public static RecognitionEvent recognition(long trackId, Rect face, String name, double score, String cameraId) {
+        return new RecognitionEvent(Type.RECOGNITION, trackId, name, score, System.currentTimeMillis(),
+                cameraId, face.x, face.y, face.width, face.height);
+    }
+
+    /**
+     * Sérialise l'événement sur une seule ligne JSON.
+     *
+     * @return La représentation JSON de l'événement
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"type\":\"").append(type).append('"')
+                .append(",\"track\":").append(trackId)
+                .append(",\"name\":");
+        appendString(sb, name);
+        sb.append(",\"score\":").append(score)
+                .append(",\"timestamp\":").append(timestamp)
+                .append(",\"camera\":");
+        appendString(sb, cameraId);
+        sb.append(",\"box\":[").append(x).append(',').append(y).append(',')
+                .append(width).append(',').append(height).append("]}");
+        return sb.toString();
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,81 @@
+package fr.anisikram.events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bus de publication/abonnement des événements de détection et de reconnaissance.
+ * La publication ne fait que déposer l'événement dans le tampon borné de chaque abonné :
+ * elle ne bloque jamais et ne fait aucune entrée/sortie sur le thread appelant.
+ */
+public class RecognitionEventBus implements AutoCloseable {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+    private static final long DEFAULT_BATCH_DELAY_MS = 200;
+
+    private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Abonne une destination avec les paramètres par défaut.
+     *
+     * @param sink Destination des événements
+     * @return L'abonnement créé
+     */
+    public EventSubscription subscribe(EventSink sink) {
+        return subscribe(sink, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_DELAY_MS, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Abonne une destination.
+     *
+     * @param sink Destination des événements
+     * @param capacity Taille maximale du tampon de l'abonnement
+     * @param maxBatchSize Nombre maximal d'événements par lot
+     * @param maxBatchDelayMillis Délai maximal d'attente pour compléter un lot
+     * @param overflowPolicy Comportement lorsque le tampon est plein
+     * @return L'abonnement créé
+     */
+    public EventSubscription subscribe(EventSink sink, int capacity, int maxBatchSize, long maxBatchDelayMillis,
+                                       OverflowPolicy overflowPolicy) {
+        EventSubscription subscription = new EventSubscription(sink, capacity, maxBatchSize, maxBatchDelayMillis, overflowPolicy);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Résilie un abonnement après livraison des événements en attente.
+     */
+    public void unsubscribe(EventSubscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            subscription.close(1000);
+        }
+    }
+
+    /**
+     * Publie un événement auprès de tous les abonnés.
+     *
+     * @param event Événement à publier
+     */
+    public void publish(RecognitionEvent event) {
+        for (EventSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public List<EventSubscription> getSubscriptions() {
+        return List.copyOf(subscriptions);
+    }
+
+    @Override
+    public void close() {
+        for (EventSubscription subscription : subscriptions) {
+            subscription.close(1000);
+        }
+        subscriptions.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package fr.anisikram.events;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Écrit les événements au format JSON (une ligne par événement) dans un fichier qui est
+ * renommé en {@code fichier.1}, {@code fichier.2}, ... lorsqu'il dépasse une taille donnée.
+ */
+public class RollingFileEventSink implements EventSink {
+
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    private BufferedWriter writer;
+    private long currentSize;
+
+    /**
+     * @param file Fichier courant
+     * @param maxBytes Taille à partir de laquelle le fichier est archivé
+     * @param maxFiles Nombre de fichiers archivés conservés
+     */
+    public RollingFileEventSink(Path file, long maxBytes, int maxFiles) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        open();
+    }
+
+    public RollingFileEventSink(Path file) throws IOException {
+        this(file, 10 * 1024 * 1024, 5);
+    }
+
+    private void open() throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        currentSize = Files.size(file);
+    }
+
+    @Override
+    public void write(List<RecognitionEvent> batch) throws IOException {
+        for (RecognitionEvent event : batch) {
+            String line = event.toJson();
+            writer.write(line);
+            writer.newLine();
+            // Taille en octets UTF-8 : un nom accentué occupe plus d'un octet par caractère
+            currentSize += line.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().length();
+        }
+        // Un seul vidage par lot
+        writer.flush();
+
+        if (currentSize >= maxBytes) {
+            roll();
+        }
+    }
+
+    private void roll() throws IOException {
+        writer.close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path source = archive(i);
+            if (Files.exists(source)) {
+                Files.move(source, archive(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(file, archive(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        Files.deleteIfExists(archive(maxFiles + 1));
+        open();
+    }
+
+    private Path archive(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
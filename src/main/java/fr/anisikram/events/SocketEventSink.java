@@ -0,0 +1,88 @@
+package fr.anisikram.events;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Envoie les événements (JSON, une ligne par événement) sur une socket TCP locale ou
+ * une socket de domaine Unix. La connexion est rétablie au lot suivant en cas d'erreur.
+ */
+public class SocketEventSink implements EventSink {
+
+    private final SocketAddress address;
+    private SocketChannel channel;
+
+    public SocketEventSink(SocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Crée une destination à partir d'une adresse textuelle.
+     *
+     * @param spec {@code unix:/chemin/vers/socket} ou {@code hôte:port}
+     * @return La destination correspondante
+     */
+    public static SocketEventSink parse(String spec) {
+        if (spec.startsWith("unix:")) {
+            return new SocketEventSink(UnixDomainSocketAddress.of(Path.of(spec.substring("unix:".length()))));
+        }
+        int colon = spec.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Adresse invalide (attendu hôte:port ou unix:chemin) : " + spec);
+        }
+        return new SocketEventSink(new InetSocketAddress(spec.substring(0, colon), Integer.parseInt(spec.substring(colon + 1))));
+    }
+
+    @Override
+    public void write(List<RecognitionEvent> batch) throws IOException {
+        StringBuilder sb = new StringBuilder(batch.size() * 160);
+        for (RecognitionEvent event : batch) {
+            sb.append(event.toJson()).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        try {
+            SocketChannel ch = connect();
+            while (buffer.hasRemaining()) {
+                ch.write(buffer);
+            }
+        } catch (IOException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        if (channel == null || !channel.isConnected()) {
+            channel = address instanceof UnixDomainSocketAddress
+                    ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                    : SocketChannel.open();
+            channel.connect(address);
+        }
+        return channel;
+    }
+
+    private void disconnect() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // La connexion est de toute façon abandonnée
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        disconnect();
+    }
+}
@@ -0,0 +1,29 @@
+package fr.anisikram.faces;
+
+import org.opencv.core.Mat;
+
+/**
+ * Moteur d'inférence produisant le vecteur de caractéristiques d'un visage prétraité.
+ * Les implémentations ne sont pas tenues d'être utilisables depuis plusieurs threads à la fois.
+ */
+public interface EmbeddingEngine extends AutoCloseable {
+
+    /**
+     * Calcule le vecteur de caractéristiques d'un visage.
+     *
+     * @param face Image BGR du visage, déjà prétraitée
+     * @return Le vecteur de caractéristiques
+     */
+    float[] embed(Mat face);
+
+    /**
+     * @return Nom court du moteur, pour les journaux et les mesures
+     */
+    String getName();
+
+    /**
+     * Libère les ressources natives du moteur.
+     */
+    @Override
+    void close();
+}
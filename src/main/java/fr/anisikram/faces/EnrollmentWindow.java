@@ -0,0 +1,78 @@
+package fr.anisikram.faces;
+
+import fr.anisikram.memory.MatTracker;
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+
+/**
+ * Conserve les visages des dernières images pendant un ajout à la base, afin d'enregistrer le
+ * meilleur d'entre eux plutôt que celui de l'image où l'ajout est confirmé.
+ */
+public class EnrollmentWindow {
+
+    private record Candidate(Mat face, double score) {
+    }
+
+    private final int windowFrames;
+    private final ArrayDeque<Candidate> candidates;
+
+    /**
+     * @param windowFrames Nombre d'images récentes parmi lesquelles choisir
+     */
+    public EnrollmentWindow(int windowFrames) {
+        this.windowFrames = windowFrames;
+        this.candidates = new ArrayDeque<>(windowFrames);
+    }
+
+    public EnrollmentWindow() {
+        this(15);
+    }
+
+    /**
+     * Ajoute le visage d'une nouvelle image ; le plus ancien sort de la fenêtre.
+     *
+     * @param face Visage extrait (la fenêtre en devient propriétaire)
+     * @param score Score de qualité du visage
+     */
+    public void offer(Mat face, double score) {
+        if (candidates.size() == windowFrames) {
+            MatTracker.release(candidates.removeFirst().face());
+        }
+        candidates.addLast(new Candidate(face, score));
+    }
+
+    private Candidate bestCandidate() {
+        Candidate best = null;
+        for (Candidate candidate : candidates) {
+            // À score égal, le plus récent l'emporte
+            if (best == null || candidate.score() >= best.score()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return Une copie du meilleur visage de la fenêtre, ou null si elle est vide
+     */
+    public Mat best() {
+        Candidate best = bestCandidate();
+        return best == null ? null : MatTracker.track(best.face().clone(), "EnrollmentWindow.best");
+    }
+
+    /**
+     * @return Le score du meilleur visage, ou -1 si la fenêtre est vide
+     */
+    public double getBestScore() {
+        Candidate best = bestCandidate();
+        return best == null ? -1 : best.score();
+    }
+
+    public void clear() {
+        for (Candidate candidate : candidates) {
+            MatTracker.release(candidate.face());
+        }
+        candidates.clear();
+    }
+}
@@ -1,5 +1,6 @@
 package fr.anisikram.faces;
 
+import fr.anisikram.memory.MatTracker;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
@@ -12,10 +13,14 @@ import java.util.List;
 
 public class FaceDetector {
     private CascadeClassifier faceDetector;
+    private String classifierPath;
+    private boolean extractedCascade;
     private final double scaleFactor = 1.1;
     private final int minNeighbors = 3;
-    private final Size minFaceSize = new Size(80, 80);
-    private final Size maxFaceSize = new Size();
+    private final Size baseMinFaceSize = new Size(80, 80);
+    private final Size baseMaxFaceSize = new Size();
+    private Size minFaceSize = baseMinFaceSize.clone();
+    private Size maxFaceSize = baseMaxFaceSize.clone();
 
     public FaceDetector(String classifierPath) {
         faceDetector = new CascadeClassifier();
@@ -23,6 +28,7 @@ public class FaceDetector {
             System.err.println("Error: Could not load classifier file from: " + classifierPath);
             throw new RuntimeException("Failed to load cascade classifier");
         }
+        this.classifierPath = classifierPath;
         System.out.println("Face detector initialized successfully");
     }
 
@@ -35,6 +41,8 @@ public class FaceDetector {
                     System.err.println("Error: Could not load default classifier file.");
                     throw new RuntimeException("Failed to load cascade classifier");
                 }
+                classifierPath = cascadeFile.getAbsolutePath();
+                extractedCascade = true;
                 System.out.println("Face detector initialized with default classifier");
             } else {
                 throw new RuntimeException("Failed to extract default cascade classifier");
@@ -75,51 +83,146 @@ public class FaceDetector {
             System.err.println("Error: Face detector not properly initialized");
             return new ArrayList<>();
         }
-        Mat grayImage = new Mat();
+        Mat grayImage = toEqualizedGray(image);
+        try {
+            return detectInGray(grayImage, minFaceSize, maxFaceSize);
+        } finally {
+            MatTracker.release(grayImage);
+        }
+    }
+
+    /**
+     * Converts a frame to the equalized grayscale image the cascade works on.
+     */
+    public Mat toEqualizedGray(Mat image) {
+        Mat grayImage;
         if (image.channels() > 1) {
+            grayImage = new Mat();
             Imgproc.cvtColor(image, grayImage, Imgproc.COLOR_BGR2GRAY);
         } else {
             grayImage = image.clone();
         }
         Imgproc.equalizeHist(grayImage, grayImage);
-        MatOfRect faceDetections = new MatOfRect();
-        faceDetector.detectMultiScale(
-                grayImage,
-                faceDetections,
-                scaleFactor,
-                minNeighbors,
-                0,
-                minFaceSize,
-                maxFaceSize
-        );
-        grayImage.release();
-        return faceDetections.toList();
+        return MatTracker.track(grayImage, "FaceDetector.toEqualizedGray");
+    }
+
+    /**
+     * Runs the cascade on an already equalized grayscale image (or a submat of one).
+     * Returned rectangles are relative to {@code grayImage}.
+     */
+    public List<Rect> detectInGray(Mat grayImage, Size minSize, Size maxSize) {
+        return detectInGray(faceDetector, grayImage, minSize, maxSize);
+    }
+
+    /**
+     * Same as {@link #detectInGray(Mat, Size, Size)} with another instance of the cascade,
+     * for callers that detect from several threads (a classifier must not be shared between threads).
+     */
+    List<Rect> detectInGray(CascadeClassifier classifier, Mat grayImage, Size minSize, Size maxSize) {
+        MatOfRect faceDetections = MatTracker.track(new MatOfRect(), "FaceDetector.detectInGray");
+        try {
+            classifier.detectMultiScale(
+                    grayImage,
+                    faceDetections,
+                    scaleFactor,
+                    minNeighbors,
+                    0,
+                    minSize,
+                    maxSize
+            );
+            return faceDetections.toList();
+        } finally {
+            MatTracker.release(faceDetections);
+        }
+    }
+
+    /**
+     * Loads a new instance of the cascade this detector was created with.
+     */
+    CascadeClassifier newClassifier() {
+        CascadeClassifier classifier = new CascadeClassifier();
+        if (!classifier.load(classifierPath)) {
+            throw new RuntimeException("Failed to load cascade classifier from: " + classifierPath);
+        }
+        return classifier;
     }
 
-    public Mat extractFace(Mat image, Rect faceRect, boolean normalize) {
-        int margin = (int) (Math.min(faceRect.width, faceRect.height) * 0.2);
-        Rect enlargedRect = new Rect(
+    /**
+     * Rescales the face size limits when the capture resolution changes.
+     *
+     * @param scale Current frame width divided by the width the limits were tuned for
+     */
+    public void setScale(double scale) {
+        minFaceSize = new Size(Math.max(20, Math.round(baseMinFaceSize.width * scale)),
+                Math.max(20, Math.round(baseMinFaceSize.height * scale)));
+        maxFaceSize = new Size(Math.round(baseMaxFaceSize.width * scale), Math.round(baseMaxFaceSize.height * scale));
+    }
+
+    public Size getMinFaceSize() {
+        return minFaceSize;
+    }
+
+    public Size getMaxFaceSize() {
+        return maxFaceSize;
+    }
+
+    /**
+     * Margin added around a detected face before cropping it.
+     */
+    public static int enlargementMargin(Rect faceRect) {
+        return (int) (Math.min(faceRect.width, faceRect.height) * 0.2);
+    }
+
+    /**
+     * Face rectangle enlarged by {@link #enlargementMargin(Rect)} and clipped to the image bounds,
+     * as cropped by {@link #extractFace(Mat, Rect, boolean)}.
+     */
+    public static Rect enlargedRect(Rect faceRect, int imageWidth, int imageHeight) {
+        int margin = enlargementMargin(faceRect);
+        return new Rect(
                 Math.max(0, faceRect.x - margin / 2),
                 Math.max(0, faceRect.y - margin / 2),
-                Math.min(faceRect.width + margin, image.width() - faceRect.x),
-                Math.min(faceRect.height + margin, image.height() - faceRect.y)
+                Math.min(faceRect.width + margin, imageWidth - faceRect.x),
+                Math.min(faceRect.height + margin, imageHeight - faceRect.y)
         );
+    }
+
+    /**
+     * Crops the enlarged face and resizes it to 224x224, optionally converted to equalized gray.
+     * Does not depend on the detector state: any thread may call it without holding a detector.
+     */
+    public static Mat extractFace(Mat image, Rect faceRect, boolean normalize) {
+        Rect enlargedRect = enlargedRect(faceRect, image.width(), image.height());
         Mat face = new Mat(image, enlargedRect);
         Mat resizedFace = new Mat();
         Size standardSize = new Size(224, 224);
         Imgproc.resize(face, resizedFace, standardSize);
+        face.release();
         if (normalize) {
-            Mat grayFace = new Mat();
+            Mat grayFace;
             if (resizedFace.channels() > 1) {
+                grayFace = new Mat();
                 Imgproc.cvtColor(resizedFace, grayFace, Imgproc.COLOR_BGR2GRAY);
-            } else {
-                grayFace = resizedFace.clone();
                 resizedFace.release();
+            } else {
+                grayFace = resizedFace;
             }
             Imgproc.equalizeHist(grayFace, grayFace);
-            return grayFace;
+            return MatTracker.track(grayFace, "FaceDetector.extractFace");
+        }
+        return MatTracker.track(resizedFace, "FaceDetector.extractFace");
+    }
+
+    /**
+     * Drops the classifier and deletes the cascade file extracted by the default constructor,
+     * instead of waiting for the JVM to exit. The detector must not be used afterwards.
+     */
+    public void release() {
+        faceDetector = null;
+        if (extractedCascade && !new File(classifierPath).delete()) {
+            System.err.println("Could not delete extracted classifier file: " + classifierPath);
         }
-        return resizedFace;
+        extractedCascade = false;
     }
 
     public void drawFaceRectangles(Mat image, List<Rect> faces) {
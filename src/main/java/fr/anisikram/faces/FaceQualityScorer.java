@@ -0,0 +1,157 @@
+package fr.anisikram.faces;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Évaluation rapide de la qualité d'un visage détecté, avant l'extraction des caractéristiques.
+ * Quatre critères, chacun ramené entre 0 et 1, sont multipliés :
+ * <ul>
+ *     <li>netteté : variance du laplacien sur le visage réduit à une taille fixe</li>
+ *     <li>taille : côté du visage rapporté à l'entrée du modèle</li>
+ *     <li>exposition : luminosité moyenne ni trop sombre ni trop claire</li>
+ *     <li>découpage : part du cadre élargi de {@link FaceDetector#extractFace} qui reste dans l'image</li>
+ * </ul>
+ * Les visages sous le seuil ne passent pas par le réseau : l'extraction serait inutile et le
+ * résultat souvent « Inconnu ». Les matrices de travail sont réutilisées : une instance par thread.
+ */
+public class FaceQualityScorer {
+
+    // Taille à laquelle le visage est réduit avant les mesures (rend la netteté indépendante de la taille)
+    private static final Size ANALYSIS_SIZE = new Size(96, 96);
+
+    // Luminosités moyennes en deçà et au-delà desquelles l'exposition est pénalisée
+    private static final double DARK_LIMIT = 60;
+    private static final double BRIGHT_LIMIT = 195;
+
+    /**
+     * Qualité d'un visage.
+     *
+     * @param score Produit des critères, entre 0 et 1
+     * @param sharpness Netteté
+     * @param size Taille
+     * @param exposure Exposition
+     * @param clipping Part du cadre élargi visible dans l'image
+     */
+    public record Quality(double score, double sharpness, double size, double exposure, double clipping) {
+    }
+
+    private final double threshold;
+    private final double sharpnessTarget;
+    private final double idealSize;
+
+    private final Mat resized = new Mat();
+    private final Mat gray = new Mat();
+    private final Mat laplacian = new Mat();
+    private final MatOfDouble mean = new MatOfDouble();
+    private final MatOfDouble stdDev = new MatOfDouble();
+
+    private long evaluated;
+    private long rejected;
+
+    /**
+     * @param threshold Score minimal pour qu'un visage soit transmis à l'extraction
+     * @param sharpnessTarget Variance du laplacien considérée comme parfaitement nette
+     * @param idealSize Côté (en pixels) à partir duquel la taille n'est plus pénalisée
+     */
+    public FaceQualityScorer(double threshold, double sharpnessTarget, double idealSize) {
+        this.threshold = threshold;
+        this.sharpnessTarget = sharpnessTarget;
+        this.idealSize = idealSize;
+    }
+
+    public FaceQualityScorer(double threshold) {
+        this(threshold, 150, 112);
+    }
+
+    public FaceQualityScorer() {
+        this(0.3);
+    }
+
+    /**
+     * Mesure la qualité d'un visage détecté.
+     *
+     * @param frame Image complète
+     * @param face Rectangle du visage dans l'image
+     * @return La qualité mesurée
+     */
+    public Quality evaluate(Mat frame, Rect face) {
+        Mat region = new Mat(frame, face);
+        Imgproc.resize(region, resized, ANALYSIS_SIZE, 0, 0, Imgproc.INTER_AREA);
+        region.release();
+        if (resized.channels() > 1) {
+            Imgproc.cvtColor(resized, gray, Imgproc.COLOR_BGR2GRAY);
+        } else {
+            resized.copyTo(gray);
+        }
+
+        Imgproc.Laplacian(gray, laplacian, CvType.CV_64F);
+        Core.meanStdDev(laplacian, mean, stdDev);
+        double deviation = stdDev.get(0, 0)[0];
+        double sharpness = clamp(deviation * deviation / sharpnessTarget);
+
+        Core.meanStdDev(gray, mean, stdDev);
+        double brightness = mean.get(0, 0)[0];
+        double exposure = clamp(Math.min(brightness / DARK_LIMIT, (255 - brightness) / (255 - BRIGHT_LIMIT)));
+
+        double size = clamp(Math.min(face.width, face.height) / idealSize);
+
+        int margin = FaceDetector.enlargementMargin(face);
+        double idealArea = (double) (face.width + margin) * (face.height + margin);
+        double clipping = clamp(FaceDetector.enlargedRect(face, frame.width(), frame.height()).area() / idealArea);
+
+        return new Quality(sharpness * size * exposure * clipping, sharpness, size, exposure, clipping);
+    }
+
+    /**
+     * Mesure la qualité d'un visage et indique s'il mérite une extraction ; les refus sont comptés.
+     */
+    public boolean accept(Mat frame, Rect face) {
+        return accept(evaluate(frame, face));
+    }
+
+    /**
+     * Indique si une qualité déjà mesurée atteint le seuil ; les refus sont comptés.
+     */
+    public boolean accept(Quality quality) {
+        evaluated++;
+        if (quality.score() < threshold) {
+            rejected++;
+            return false;
+        }
+        return true;
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return Part des extractions évitées grâce au filtre
+     */
+    public double getSkippedFraction() {
+        return evaluated == 0 ? 0 : (double) rejected / evaluated;
+    }
+
+    public String getStatistics() {
+        return String.format("visages évalués: %d, extractions évitées: %d (%.1f %%)",
+                evaluated, rejected, 100 * getSkippedFraction());
+    }
+
+    public void release() {
+        resized.release();
+        gray.release();
+        laplacian.release();
+        mean.release();
+        stdDev.release();
+    }
+}
@@ -1,30 +1,37 @@
 package fr.anisikram.faces;
 
+import fr.anisikram.gallery.GalleryCompactor;
+import fr.anisikram.gallery.GalleryFile;
+import fr.anisikram.memory.MatTracker;
 import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.objdetect.FaceRecognizerSF;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Classe permettant de reconnaître des visages à l'aide de FaceRecognizerSF d'OpenCV.
+ * Classe permettant de reconnaître des visages à l'aide du modèle SFace, exécuté par
+ * FaceRecognizerSF d'OpenCV ou par un autre {@link EmbeddingEngine}.
  * La classe peut être utilisée pour enregistrer des visages connus et les reconnaître ultérieurement.
  */
 public class FaceRecognizer {
 
-    // Le modèle de reconnaissance faciale FaceRecognizerSF
-    private FaceRecognizerSF faceRecognizer;
+    // Le moteur d'extraction des caractéristiques faciales
+    private final EmbeddingEngine engine;
 
     // Seuil de confiance pour la reconnaissance (entre 0 et 1)
     private float confidenceThreshold;
 
-    // Base de données des caractéristiques faciales connues
-    private final List<Mat> faceFeatures;
+    // Version courante de la base des visages connus (remplacée atomiquement à chaque modification)
+    private final AtomicReference<GallerySnapshot> gallery;
 
-    // Noms associés aux visages connus (même index que faceFeatures)
-    private List<String> faceNames;
+    // Sérialise les modifications de la base (ajouts, chargements, compactages)
+    private final Object galleryWriteLock = new Object();
+
+    // Reçoit chaque modification de la base, sous le verrou d'écriture (null = aucun)
+    private GalleryListener galleryListener;
 
     /**
      * Constructeur initialisant le modèle de reconnaissance faciale.
@@ -35,14 +42,23 @@ public class FaceRecognizer {
      */
     public FaceRecognizer(String modelPath, String configPath, float threshold) {
         // Initialisation du modèle FaceRecognizerSF
-        this.faceRecognizer = FaceRecognizerSF.create(modelPath, configPath);
+        this(new OpenCvEmbeddingEngine(modelPath, configPath), threshold);
+    }
+
+    /**
+     * Constructeur utilisant un moteur d'extraction donné.
+     *
+     * @param engine Moteur d'extraction (libéré avec ce reconnaisseur)
+     * @param threshold Seuil de confiance pour la reconnaissance
+     */
+    public FaceRecognizer(EmbeddingEngine engine, float threshold) {
+        this.engine = engine;
         this.confidenceThreshold = threshold;
 
-        // Initialisation des listes pour stocker les visages connus
-        this.faceFeatures = new ArrayList<>();
-        this.faceNames = new ArrayList<>();
+        // Initialisation d'une base vide
+        this.gallery = new AtomicReference<>(GallerySnapshot.empty());
 
-        System.out.println("FaceRecognizer initialisé avec succès.");
+        System.out.println("FaceRecognizer initialisé avec succès (moteur " + engine.getName() + ").");
     }
 
     /**
@@ -68,16 +84,14 @@ public class FaceRecognizer {
         }
 
         try {
-            // Prétraitement de l'image si nécessaire
-            Mat processedFace = preprocessFace(faceImage);
-
             // Extraction des caractéristiques faciales
-            Mat faceFeature = new Mat();
-            faceRecognizer.feature(processedFace, faceFeature);
+            float[] faceFeature = extractFeature(faceImage);
+            if (faceFeature == null) {
+                return false;
+            }
 
-            // Ajout des caractéristiques et du nom à la base de données
-            faceFeatures.add(faceFeature);
-            faceNames.add(personName);
+            // Ajout des caractéristiques et du nom dans une nouvelle version de la base
+            appendFeature(personName, faceFeature);
 
             System.out.println("Visage de '" + personName + "' ajouté à la base de données.");
             return true;
@@ -87,6 +101,73 @@ public class FaceRecognizer {
         }
     }
 
+    /**
+     * Ajoute à la base un vecteur de caractéristiques déjà calculé (par exemple reçu d'un autre nœud).
+     *
+     * @param personName Nom de la personne
+     * @param feature Vecteur de caractéristiques
+     * @return true si l'ajout a réussi, false si le vecteur est incompatible avec la base
+     */
+    public boolean addFeature(String personName, float[] feature) {
+        for (float value : feature) {
+            if (!Float.isFinite(value)) {
+                System.err.println("Vecteur invalide pour '" + personName + "' : valeur non finie.");
+                return false;
+            }
+        }
+        try {
+            appendFeature(personName, feature.clone());
+            return true;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erreur lors de l'ajout du vecteur de '" + personName + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void appendFeature(String personName, float[] feature) {
+        synchronized (galleryWriteLock) {
+            swapGallery(gallery.get().with(personName, feature));
+            if (galleryListener != null) {
+                galleryListener.onAdd(personName, feature);
+            }
+        }
+    }
+
+    /**
+     * Retire de la base tous les visages d'une personne.
+     *
+     * @param personName Nom de la personne
+     * @return Le nombre de visages retirés
+     */
+    public int removeIdentity(String personName) {
+        synchronized (galleryWriteLock) {
+            GallerySnapshot current = gallery.get();
+            int removed = current.count(personName);
+            if (removed > 0) {
+                swapGallery(current.without(personName));
+                if (galleryListener != null) {
+                    galleryListener.onRemove(personName);
+                }
+            }
+            return removed;
+        }
+    }
+
+    /**
+     * Installe le gestionnaire qui reçoit chaque modification de la base ; il reçoit d'abord la base
+     * courante, de sorte qu'aucune modification ne lui échappe entre les deux.
+     *
+     * @param listener Gestionnaire (null pour le retirer)
+     */
+    public void setGalleryListener(GalleryListener listener) {
+        synchronized (galleryWriteLock) {
+            galleryListener = listener;
+            if (listener != null) {
+                listener.onReplace(toGalleryFile());
+            }
+        }
+    }
+
     /**
      * Reconnaît un visage à partir d'une image.
      *
@@ -94,55 +175,164 @@ public class FaceRecognizer {
      * @return Le nom de la personne reconnue ou "Inconnu" si le visage n'est pas reconnu
      */
     public String recognize(Mat faceImage) {
+        return recognizeWithScore(faceImage).name();
+    }
+
+    /**
+     * Reconnaît un visage et renvoie également le score de la meilleure correspondance.
+     *
+     * @param faceImage Image Mat contenant un visage aligné
+     * @return Le résultat de la reconnaissance (nom et similarité)
+     */
+    public RecognitionResult recognizeWithScore(Mat faceImage) {
         if (faceImage.empty()) {
             System.err.println("L'image du visage est vide.");
-            return "Inconnu";
+            return RecognitionResult.unknown(-1);
         }
 
-        if (faceFeatures.isEmpty()) {
+        if (getDatabaseSize() == 0) {
             System.err.println("Aucun visage dans la base de données.");
-            return "Inconnu";
+            return RecognitionResult.unknown(-1);
         }
 
+        RecognitionResult result = recognizeBatch(List.of(faceImage)).getFirst();
+        if (result.isKnown()) {
+            System.out.println("Visage reconnu: '" + result.name() + "' avec une confiance de " + result.score());
+        } else if (!RecognitionResult.ERROR.equals(result.name())) {
+            System.out.println("Visage non reconnu. Meilleure correspondance: " + result.score());
+        }
+        return result;
+    }
+
+    /**
+     * Reconnaît un lot de visages en une seule passe : les caractéristiques sont extraites
+     * à la suite puis comparées à toute la base par un unique produit matriciel.
+     *
+     * @param faceImages Images Mat contenant chacune un visage aligné
+     * @return Les résultats, dans le même ordre que {@code faceImages}
+     */
+    public List<RecognitionResult> recognizeBatch(List<Mat> faceImages) {
+        List<RecognitionResult> results = new ArrayList<>(faceImages.size());
+
+        // Extraction des caractéristiques de chaque visage du lot
+        List<float[]> queryFeatures = new ArrayList<>(faceImages.size());
+        List<Integer> valid = new ArrayList<>(faceImages.size());
+        for (int i = 0; i < faceImages.size(); i++) {
+            Mat faceImage = faceImages.get(i);
+            if (faceImage.empty()) {
+                results.add(RecognitionResult.unknown(-1));
+                continue;
+            }
+            float[] feature = extractFeature(faceImage);
+            results.add(feature == null ? RecognitionResult.error() : RecognitionResult.unknown(-1));
+            if (feature != null) {
+                queryFeatures.add(feature);
+                valid.add(i);
+            }
+        }
+        if (queryFeatures.isEmpty()) {
+            return results;
+        }
+
+        List<RecognitionResult> matches = matchFeatures(queryFeatures);
+        for (int row = 0; row < valid.size(); row++) {
+            results.set(valid.get(row), matches.get(row));
+        }
+        return results;
+    }
+
+    /**
+     * Compare des vecteurs de caractéristiques déjà extraits à toute la base, par un unique produit matriciel.
+     *
+     * @param features Vecteurs de caractéristiques (non normalisés)
+     * @return Les résultats, dans le même ordre que {@code features}
+     */
+    public List<RecognitionResult> matchFeatures(List<float[]> features) {
+        List<RecognitionResult> results = new ArrayList<>(features.size());
+        for (int i = 0; i < features.size(); i++) {
+            results.add(RecognitionResult.unknown(-1));
+        }
+        if (features.isEmpty()) {
+            return results;
+        }
+
+        // La version de la base est retenue pendant toute la comparaison : un rechargement
+        // concurrent ne la libère qu'une fois la recherche terminée
+        GallerySnapshot snapshot = acquireGallery();
+        Mat queries = MatTracker.track(new Mat(features.size(), features.getFirst().length, CvType.CV_32F),
+                "FaceRecognizer.matchFeatures");
+        Mat similarities = MatTracker.track(new Mat(), "FaceRecognizer.matchFeatures");
+        Mat noOffset = MatTracker.track(new Mat(), "FaceRecognizer.matchFeatures");
         try {
-            // Prétraitement de l'image
-            Mat processedFace = preprocessFace(faceImage);
+            if (snapshot.isEmpty()) {
+                return results;
+            }
 
-            // Extraction des caractéristiques faciales
-            Mat queryFeature = new Mat();
-            faceRecognizer.feature(processedFace, queryFeature);
-
-            // Recherche du visage le plus similaire
-            double bestMatch = -1;
-            int bestMatchIndex = -1;
-
-            // Comparaison avec tous les visages connus
-            for (int i = 0; i < faceFeatures.size(); i++) {
-                // Calcul de la similarité cosinus entre les caractéristiques
-                double similarity = faceRecognizer.match(queryFeature, faceFeatures.get(i), FaceRecognizerSF.FR_COSINE);
-
-                // Si la similarité est supérieure au meilleur match actuel, on met à jour
-                if (similarity > bestMatch) {
-                    bestMatch = similarity;
-                    bestMatchIndex = i;
-                }
+            for (int row = 0; row < features.size(); row++) {
+                queries.put(row, 0, features.get(row));
+                Mat queryRow = queries.row(row);
+                Core.normalize(queryRow, queryRow);
+                queryRow.release();
             }
 
-            // Si le meilleur match dépasse le seuil de confiance, on retourne le nom associé
-            if (bestMatch > confidenceThreshold && bestMatchIndex != -1) {
-                System.out.println("Visage reconnu: '" + faceNames.get(bestMatchIndex) +
-                        "' avec une confiance de " + bestMatch);
-                return faceNames.get(bestMatchIndex);
-            } else {
-                System.out.println("Visage non reconnu. Meilleure correspondance: " + bestMatch);
-                return "Inconnu";
+            // Similarités cosinus entre toutes les requêtes et toute la base
+            Core.gemm(queries, snapshot.matrix(), 1, noOffset, 0, similarities, Core.GEMM_2_T);
+
+            for (int row = 0; row < features.size(); row++) {
+                Mat scores = similarities.row(row);
+                Core.MinMaxLocResult best = Core.minMaxLoc(scores);
+                scores.release();
+                int bestMatchIndex = (int) best.maxLoc.x;
+
+                // Si le meilleur match dépasse le seuil de confiance, on retourne le nom associé
+                if (best.maxVal > confidenceThreshold) {
+                    results.set(row, new RecognitionResult(snapshot.name(bestMatchIndex), best.maxVal));
+                } else {
+                    results.set(row, RecognitionResult.unknown(best.maxVal));
+                }
             }
+            return results;
         } catch (Exception e) {
             System.err.println("Erreur lors de la reconnaissance du visage: " + e.getMessage());
-            return "Erreur";
+            for (int row = 0; row < features.size(); row++) {
+                results.set(row, RecognitionResult.error());
+            }
+            return results;
+        } finally {
+            MatTracker.release(queries);
+            MatTracker.release(similarities);
+            MatTracker.release(noOffset);
+            snapshot.release();
         }
     }
 
+    /**
+     * Extrait le vecteur de caractéristiques d'un visage.
+     *
+     * @param faceImage Image Mat contenant un visage aligné
+     * @return Le vecteur de caractéristiques, ou null si l'extraction a échoué
+     */
+    public float[] extractFeature(Mat faceImage) {
+        if (faceImage.empty()) {
+            return null;
+        }
+        try {
+            Mat processedFace = preprocessFace(faceImage);
+            try {
+                return engine.embed(processedFace);
+            } finally {
+                MatTracker.release(processedFace);
+            }
+        } catch (Exception e) {
+            System.err.println("Erreur lors de l'extraction des caractéristiques: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int getDatabaseSize() {
+        return gallery.get().size();
+    }
+
     /**
      * Prétraite une image de visage pour la reconnaissance.
      *
@@ -150,48 +340,41 @@ public class FaceRecognizer {
      * @return Image Mat prétraitée
      */
     private Mat preprocessFace(Mat faceImage) {
-        Mat processedFace = new Mat();
-
-        // Amélioration du contraste avant traitement
-        Mat enhanced = new Mat();
-        Core.normalize(faceImage, enhanced, 0, 255, Core.NORM_MINMAX);
-
-        // Réduction du bruit
-        Mat denoised = new Mat();
-        Imgproc.GaussianBlur(enhanced, denoised, new Size(3, 3), 0);
-
-        // Redimensionnement si nécessaire (certains modèles nécessitent une taille spécifique)
-        if (faceImage.rows() != 224 || faceImage.cols() != 224) {
-            Imgproc.resize(faceImage, processedFace, new Size(224, 224));
-        } else {
-            faceImage.copyTo(processedFace);
-        }
+        // Temporaires suivis eux aussi : une exception en cours de route ne doit pas les laisser au finaliseur
+        Mat processedFace = MatTracker.track(new Mat(), "FaceRecognizer.preprocessFace.temp");
+        Mat yuv = MatTracker.track(new Mat(), "FaceRecognizer.preprocessFace.temp");
+        List<Mat> channels = new ArrayList<>();
+        try {
+            // Redimensionnement si nécessaire (certains modèles nécessitent une taille spécifique)
+            if (faceImage.rows() != 224 || faceImage.cols() != 224) {
+                Imgproc.resize(faceImage, processedFace, new Size(224, 224));
+            } else {
+                faceImage.copyTo(processedFace);
+            }
 
-        // Conversion en BGR si l'image est en niveaux de gris
-        if (processedFace.channels() == 1) {
-            Imgproc.cvtColor(processedFace, processedFace, Imgproc.COLOR_GRAY2BGR);
-        }
+            // Conversion en BGR si l'image est en niveaux de gris
+            if (processedFace.channels() == 1) {
+                Imgproc.cvtColor(processedFace, processedFace, Imgproc.COLOR_GRAY2BGR);
+            }
 
-        // Normalisation d'histogramme pour améliorer le contraste
-        if (processedFace.channels() == 1) {
-            Imgproc.equalizeHist(processedFace, processedFace);
-            Imgproc.cvtColor(processedFace, processedFace, Imgproc.COLOR_GRAY2BGR);
-        } else {
-            // Conversion en YUV pour égaliser uniquement la luminance
-            Mat yuv = new Mat();
+            // Normalisation d'histogramme pour améliorer le contraste :
+            // conversion en YUV pour égaliser uniquement la luminance
             Imgproc.cvtColor(processedFace, yuv, Imgproc.COLOR_BGR2YUV);
-            List<Mat> channels = new ArrayList<>();
             Core.split(yuv, channels);
+            channels.forEach(channel -> MatTracker.track(channel, "FaceRecognizer.preprocessFace.temp"));
             Imgproc.equalizeHist(channels.getFirst(), channels.getFirst());
             Core.merge(channels, yuv);
             Imgproc.cvtColor(yuv, processedFace, Imgproc.COLOR_YUV2BGR);
-        }
 
-        // Normalisation finale
-        Mat normalized = new Mat();
-        processedFace.convertTo(normalized, CvType.CV_32F, 1.0/255);
-
-        return normalized;
+            // Normalisation finale
+            Mat normalized = new Mat();
+            processedFace.convertTo(normalized, CvType.CV_32F, 1.0/255);
+            return MatTracker.track(normalized, "FaceRecognizer.preprocessFace");
+        } finally {
+            channels.forEach(MatTracker::release);
+            MatTracker.release(yuv);
+            MatTracker.release(processedFace);
+        }
     }
 
     /**
@@ -202,34 +385,13 @@ public class FaceRecognizer {
      */
     public boolean saveDatabase(String filePath) {
         try {
-            if (faceFeatures.isEmpty()) {
+            if (getDatabaseSize() == 0) {
                 System.err.println("Aucun visage à sauvegarder.");
                 return false;
             }
 
-            // Préparation du dossier de destination si nécessaire
-            java.nio.file.Path path = java.nio.file.Paths.get(filePath);
-            java.nio.file.Files.createDirectories(path.getParent());
-
-            // Structure pour stocker toutes les caractéristiques
-            List<float[]> allFeatures = new ArrayList<>();
-
-            // Extraction des caractéristiques de chaque visage
-            for (Mat feature : faceFeatures) {
-                float[] featureArray = new float[(int) feature.total()];
-                feature.get(0, 0, featureArray);
-                allFeatures.add(featureArray);
-            }
-
-            // Sauvegarde des caractéristiques en binaire
-            try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(
-                    new java.io.FileOutputStream(filePath + ".features"))) {
-                oos.writeObject(allFeatures);
-            }
-
-            // Sauvegarde des noms
-            java.nio.file.Files.write(java.nio.file.Paths.get(filePath + ".names"),
-                    String.join("\n", faceNames).getBytes());
+            // Écriture des caractéristiques et des noms (remplacement atomique des fichiers)
+            toGalleryFile().write(filePath);
 
             System.out.println("Base de données sauvegardée avec succès dans : " + filePath);
             return true;
@@ -242,82 +404,94 @@ public class FaceRecognizer {
 
     /**
      * Charge la base de données des visages connus depuis un fichier.
+     * La nouvelle base est construite à part puis substituée d'un bloc : les reconnaissances
+     * en cours ne voient jamais une base vide ou partielle.
      *
      * @param filePath Chemin du fichier contenant la base de données
      * @return true si le chargement a réussi, false sinon
      */
     public boolean loadDatabase(String filePath) {
         try {
+            // Lecture et vérification de la cohérence des données
+            GalleryFile gallery = GalleryFile.read(filePath);
 
+            setGallery(gallery);
 
-            // Vérification de l'existence des fichiers
-            java.io.File featuresFile = new java.io.File(filePath + ".features");
-            java.io.File namesFile = new java.io.File(filePath + ".names");
+            System.out.println(gallery.size() + " visages chargés dans la base de données.");
+            return true;
+        } catch (Exception e) {
+            System.err.println("Erreur lors du chargement de la base de données: " + e.getMessage());
+            e.printStackTrace(); // Affichage de la trace complète pour débogage
+            return false;
+        }
+    }
 
-            if (!featuresFile.exists() || !namesFile.exists()) {
-                System.err.println("Fichiers de base de données introuvables: " + filePath);
-                return false;
-            }
-            // Chargement des noms
-            String namesContent = new String(java.nio.file.Files.readAllBytes(
-                    java.nio.file.Paths.get(filePath + ".names")));
-            String[] names = namesContent.split("\n");
-
-            // Chargement des caractéristiques
-            List<float[]> loadedFeatures;
-            try (java.io.ObjectInputStream ois = new java.io.ObjectInputStream(
-                    new java.io.FileInputStream(filePath + ".features"))) {
-                loadedFeatures = (List<float[]>) ois.readObject();
-            }
+    /**
+     * Compacte la base en mémoire : seuls quelques vecteurs représentatifs sont conservés par personne.
+     *
+     * @param compactor Paramètres du compactage
+     * @return Le bilan du compactage
+     */
+    public GalleryCompactor.Result compact(GalleryCompactor compactor) {
+        synchronized (galleryWriteLock) {
+            GalleryCompactor.Result result = compactor.compact(toGalleryFile());
+            setGallery(result.gallery());
+            return result;
+        }
+    }
 
-            // Vérification de la cohérence des données
-            if (loadedFeatures.size() != names.length) {
-                System.err.println("Les données chargées sont incohérentes: " +
-                        loadedFeatures.size() + " caractéristiques vs " +
-                        names.length + " noms");
-                return false;
+    /**
+     * Remplace atomiquement la base par une autre, après validation. L'ancienne version reste
+     * utilisable par les reconnaissances en cours et sa mémoire native est libérée après elles.
+     *
+     * @param newGallery Nouvelle base
+     * @throws IllegalArgumentException si la base est invalide (dimensions incohérentes, valeurs non finies...)
+     */
+    public void setGallery(GalleryFile newGallery) {
+        newGallery.validate();
+        GallerySnapshot snapshot = GallerySnapshot.of(newGallery);
+        synchronized (galleryWriteLock) {
+            swapGallery(snapshot);
+            if (galleryListener != null) {
+                galleryListener.onReplace(snapshot.toGalleryFile());
             }
+        }
+    }
 
-            // Réinitialisation des listes
-            faceFeatures.clear();
-            faceNames.clear();
-
-            // Reconstruction des caractéristiques individuelles et des noms
-            for (int i = 0; i < loadedFeatures.size(); i++) {
-                float[] featureArray = loadedFeatures.get(i);
-                Mat feature = new Mat(1, featureArray.length, CvType.CV_32F);
-                feature.put(0, 0, featureArray);
+    /**
+     * @return Une copie de la base de visages sous forme de vecteurs Java
+     */
+    public GalleryFile toGalleryFile() {
+        GallerySnapshot snapshot = acquireGallery();
+        try {
+            return snapshot.toGalleryFile();
+        } finally {
+            snapshot.release();
+        }
+    }
 
-                faceFeatures.add(feature);
-                faceNames.add(names[i]);
+    private GallerySnapshot acquireGallery() {
+        while (true) {
+            GallerySnapshot snapshot = gallery.get();
+            if (snapshot.retain()) {
+                return snapshot;
             }
-
-            System.out.println(loadedFeatures.size() + " visages chargés dans la base de données.");
-            return true;
-        } catch (ClassNotFoundException e) {
-            System.err.println("Erreur: Format de fichier non compatible: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        } catch (Exception e) {
-            System.err.println("Erreur lors du chargement de la base de données: " + e.getMessage());
-            e.printStackTrace(); // Affichage de la trace complète pour débogage
-            return false;
         }
     }
 
+    private void swapGallery(GallerySnapshot snapshot) {
+        gallery.getAndSet(snapshot).release();
+    }
+
     /**
      * Libère les ressources utilisées par la classe.
      */
     public void release() {
-        // Libération des ressources OpenCV
-
-        // Libération des caractéristiques faciales
-        for (Mat feature : faceFeatures) {
-            feature.release();
+        // Libération des caractéristiques faciales (après les reconnaissances en cours)
+        synchronized (galleryWriteLock) {
+            swapGallery(GallerySnapshot.empty());
         }
-
-        faceFeatures.clear();
-        faceNames.clear();
+        engine.close();
 
         System.out.println("Ressources libérées.");
     }
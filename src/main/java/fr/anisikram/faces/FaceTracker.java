@@ -0,0 +1,149 @@
+package fr.anisikram.faces;
+
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Suivi très simple des visages d'une image à l'autre par recouvrement (IoU).
+ * Chaque visage détecté reçoit un identifiant de piste stable tant qu'il reste visible.
+ */
+public class FaceTracker {
+
+    // Recouvrement minimal pour associer une détection à une piste existante
+    private final double iouThreshold;
+
+    // Nombre d'images consécutives sans détection avant d'abandonner une piste
+    private final int maxMissedFrames;
+
+    private final List<Track> tracks;
+    private long nextTrackId = 1;
+
+    public FaceTracker(double iouThreshold, int maxMissedFrames) {
+        this.iouThreshold = iouThreshold;
+        this.maxMissedFrames = maxMissedFrames;
+        this.tracks = new ArrayList<>();
+    }
+
+    public FaceTracker() {
+        this(0.3, 5);
+    }
+
+    /**
+     * Associe les visages détectés aux pistes existantes et crée de nouvelles pistes si besoin.
+     *
+     * @param faces Visages détectés dans l'image courante
+     * @return Les pistes correspondantes, dans le même ordre que {@code faces}
+     */
+    public List<Track> update(List<Rect> faces) {
+        List<Track> assigned = new ArrayList<>(faces.size());
+        List<Track> available = new ArrayList<>(tracks);
+
+        for (Rect face : faces) {
+            Track best = null;
+            double bestIou = iouThreshold;
+            for (Track track : available) {
+                double iou = iou(track.box, face);
+                if (iou >= bestIou) {
+                    bestIou = iou;
+                    best = track;
+                }
+            }
+
+            if (best == null) {
+                best = new Track(nextTrackId++);
+                tracks.add(best);
+            } else {
+                available.remove(best);
+            }
+            best.box = face;
+            best.missedFrames = 0;
+            assigned.add(best);
+        }
+
+        // Vieillissement des pistes non retrouvées dans cette image
+        Iterator<Track> it = tracks.iterator();
+        while (it.hasNext()) {
+            Track track = it.next();
+            if (available.contains(track) && ++track.missedFrames > maxMissedFrames) {
+                it.remove();
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * @return Les pistes actuellement suivies (y compris celles momentanément perdues)
+     */
+    public List<Track> getTracks() {
+        return List.copyOf(tracks);
+    }
+
+    public void clear() {
+        tracks.clear();
+    }
+
+    /**
+     * @return Rapport entre l'intersection et l'union des deux rectangles
+     */
+    public static double iou(Rect a, Rect b) {
+        int x1 = Math.max(a.x, b.x);
+        int y1 = Math.max(a.y, b.y);
+        int x2 = Math.min(a.x + a.width, b.x + b.width);
+        int y2 = Math.min(a.y + a.height, b.y + b.height);
+        if (x2 <= x1 || y2 <= y1) {
+            return 0;
+        }
+        double inter = (double) (x2 - x1) * (y2 - y1);
+        return inter / (a.area() + b.area() - inter);
+    }
+
+    /**
+     * Piste d'un visage : identifiant stable, dernière position et dernière identité connue.
+     */
+    public static class Track {
+        private final long id;
+        private Rect box;
+        private int missedFrames;
+        private String name;
+        private double score;
+
+        Track(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Rect getBox() {
+            return box;
+        }
+
+        public int getMissedFrames() {
+            return missedFrames;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return true si une identité connue a déjà été attribuée à cette piste
+         */
+        public boolean isIdentified() {
+            return name != null && !RecognitionResult.UNKNOWN.equals(name) && !RecognitionResult.ERROR.equals(name);
+        }
+
+        public void setIdentity(String name, double score) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package fr.anisikram.faces;
+
+import fr.anisikram.gallery.GalleryFile;
+
+/**
+ * Reçoit les modifications de la base de visages d'un {@link FaceRecognizer}, dans l'ordre où
+ * elles sont appliquées. Les méthodes sont appelées sous le verrou d'écriture de la base : elles
+ * doivent rendre la main rapidement et ne pas modifier la base elles-mêmes.
+ */
+public interface GalleryListener {
+
+    /**
+     * La base a été remplacée en entier (chargement, rechargement, compactage), ou le gestionnaire
+     * vient d'être installé et reçoit la base courante.
+     *
+     * @param gallery Copie de la nouvelle base
+     */
+    void onReplace(GalleryFile gallery);
+
+    /**
+     * Un visage a été ajouté à la fin de la base.
+     */
+    void onAdd(String name, float[] feature);
+
+    /**
+     * Tous les visages d'une personne ont été retirés de la base.
+     */
+    void onRemove(String name);
+}
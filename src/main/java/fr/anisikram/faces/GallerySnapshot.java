@@ -0,0 +1,181 @@
+package fr.anisikram.faces;
+
+import fr.anisikram.gallery.GalleryFile;
+import fr.anisikram.memory.MatTracker;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Version immuable de la base de visages. Les vecteurs sont empilés dans une matrice native
+ * (une ligne normalisée par visage) afin qu'une recherche se réduise à un produit matriciel.
+ * <p>
+ * La matrice est libérée par comptage de références : la base courante détient une référence,
+ * chaque recherche en cours en détient une autre. Une version remplacée est donc libérée dès
+ * que la dernière recherche qui l'utilisait se termine.
+ */
+final class GallerySnapshot {
+
+    private final List<String> names;
+    private final List<float[]> features;
+    private final Mat matrix;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private GallerySnapshot(List<String> names, List<float[]> features) {
+        this.names = List.copyOf(names);
+        this.features = List.copyOf(features);
+        this.matrix = MatTracker.track(new Mat(), "GallerySnapshot.matrix");
+        if (!features.isEmpty()) {
+            int dimension = features.getFirst().length;
+            matrix.create(features.size(), dimension, CvType.CV_32F);
+            for (int i = 0; i < features.size(); i++) {
+                if (features.get(i).length != dimension) {
+                    MatTracker.release(matrix);
+                    throw new IllegalArgumentException("Dimension incompatible : " + features.get(i).length
+                            + " au lieu de " + dimension);
+                }
+                putNormalized(matrix, i, features.get(i));
+            }
+        }
+    }
+
+    /**
+     * Version construite à partir d'une matrice déjà remplie, dont elle devient propriétaire.
+     */
+    private GallerySnapshot(List<String> names, List<float[]> features, Mat matrix) {
+        this.names = names;
+        this.features = features;
+        this.matrix = matrix;
+    }
+
+    private static void putNormalized(Mat matrix, int index, float[] feature) {
+        matrix.put(index, 0, feature);
+        Mat row = matrix.row(index);
+        Core.normalize(row, row);
+        row.release();
+    }
+
+    static GallerySnapshot empty() {
+        return new GallerySnapshot(List.of(), List.of());
+    }
+
+    static GallerySnapshot of(GalleryFile gallery) {
+        return new GallerySnapshot(gallery.names(), gallery.features());
+    }
+
+    /**
+     * @return Une nouvelle version contenant en plus le visage donné (la version courante est inchangée)
+     */
+    GallerySnapshot with(String name, float[] feature) {
+        if (names.isEmpty()) {
+            return new GallerySnapshot(List.of(name), List.of(feature));
+        }
+        if (feature.length != dimension()) {
+            throw new IllegalArgumentException("Dimension incompatible : " + feature.length
+                    + " au lieu de " + dimension());
+        }
+        List<String> newNames = new ArrayList<>(names.size() + 1);
+        newNames.addAll(names);
+        newNames.add(name);
+        List<float[]> newFeatures = new ArrayList<>(features.size() + 1);
+        newFeatures.addAll(features);
+        newFeatures.add(feature);
+
+        // Les lignes existantes sont déjà normalisées : copie brute, seule la nouvelle ligne est calculée
+        Mat newMatrix = MatTracker.track(new Mat(names.size() + 1, dimension(), CvType.CV_32F),
+                "GallerySnapshot.matrix");
+        Mat existing = newMatrix.rowRange(0, names.size());
+        matrix.copyTo(existing);
+        existing.release();
+        putNormalized(newMatrix, names.size(), feature);
+        return new GallerySnapshot(Collections.unmodifiableList(newNames),
+                Collections.unmodifiableList(newFeatures), newMatrix);
+    }
+
+    /**
+     * @return Une nouvelle version sans les visages de la personne donnée (la version courante est inchangée)
+     */
+    GallerySnapshot without(String name) {
+        List<String> newNames = new ArrayList<>(names.size());
+        List<float[]> newFeatures = new ArrayList<>(features.size());
+        for (int i = 0; i < names.size(); i++) {
+            if (!names.get(i).equals(name)) {
+                newNames.add(names.get(i));
+                newFeatures.add(features.get(i));
+            }
+        }
+        return new GallerySnapshot(newNames, newFeatures);
+    }
+
+    /**
+     * @return Nombre de visages enregistrés pour la personne donnée
+     */
+    int count(String name) {
+        int count = 0;
+        for (String other : names) {
+            if (other.equals(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Prend une référence sur cette version.
+     *
+     * @return false si la version a déjà été libérée (l'appelant doit relire la version courante)
+     */
+    boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Rend une référence ; la matrice native est libérée avec la dernière.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            MatTracker.release(matrix);
+        }
+    }
+
+    boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    int dimension() {
+        return matrix.cols();
+    }
+
+    String name(int index) {
+        return names.get(index);
+    }
+
+    Mat matrix() {
+        return matrix;
+    }
+
+    GalleryFile toGalleryFile() {
+        List<float[]> copies = new ArrayList<>(features.size());
+        for (float[] feature : features) {
+            copies.add(feature.clone());
+        }
+        return new GalleryFile(new ArrayList<>(names), copies);
+    }
+}
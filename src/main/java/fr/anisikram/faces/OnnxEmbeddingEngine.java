@@ -0,0 +1,127 @@
+package fr.anisikram.faces;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Map;
+
+/**
+ * Moteur d'extraction exécutant le modèle SFace avec ONNX Runtime (fournisseur CPU).
+ * Contrairement à FaceRecognizerSF, le nombre de threads et le niveau d'optimisation du graphe
+ * sont réglables.
+ * <p>
+ * Le tenseur d'entrée est créé une seule fois sur un tampon natif : chaque extraction y écrit
+ * directement le visage au format NCHW, sans allocation ni copie supplémentaire. L'entrée est
+ * construite comme le fait OpenCV pour SFace (redimensionnement en 112x112, BGR vers RGB,
+ * valeurs inchangées), ce qui donne les mêmes vecteurs que {@link OpenCvEmbeddingEngine}.
+ */
+public class OnnxEmbeddingEngine implements EmbeddingEngine {
+
+    // Taille de l'image attendue par SFace
+    private static final int INPUT_SIZE = 112;
+    private static final int PLANE = INPUT_SIZE * INPUT_SIZE;
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final String inputName;
+
+    // Tampons réutilisés d'une extraction à l'autre (d'où la synchronisation de embed)
+    private final FloatBuffer inputBuffer;
+    private final OnnxTensor inputTensor;
+    private final Mat resized = new Mat();
+    private final float[] interleaved = new float[3 * PLANE];
+    private final float[] planar = new float[3 * PLANE];
+
+    /**
+     * @param modelPath Chemin vers le modèle SFace au format ONNX
+     * @param intraOpThreads Threads utilisés à l'intérieur d'un opérateur (0 = choix d'ONNX Runtime)
+     * @param interOpThreads Threads exécutant des opérateurs indépendants en parallèle (1 = exécution séquentielle)
+     * @param optimizationLevel Niveau d'optimisation du graphe
+     * @throws OrtException si le modèle ne peut pas être chargé
+     */
+    public OnnxEmbeddingEngine(String modelPath, int intraOpThreads, int interOpThreads,
+                               OrtSession.SessionOptions.OptLevel optimizationLevel) throws OrtException {
+        this.environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setIntraOpNumThreads(intraOpThreads);
+            options.setInterOpNumThreads(interOpThreads);
+            options.setExecutionMode(interOpThreads > 1
+                    ? OrtSession.SessionOptions.ExecutionMode.PARALLEL
+                    : OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL);
+            options.setOptimizationLevel(optimizationLevel);
+            this.session = environment.createSession(modelPath, options);
+        }
+        this.inputName = session.getInputNames().iterator().next();
+
+        this.inputBuffer = ByteBuffer.allocateDirect(3 * PLANE * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        try {
+            this.inputTensor = OnnxTensor.createTensor(environment, inputBuffer,
+                    new long[]{1, 3, INPUT_SIZE, INPUT_SIZE});
+        } catch (OrtException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Constructeur avec valeurs par défaut : threads choisis par ONNX Runtime, exécution
+     * séquentielle et toutes les optimisations du graphe.
+     *
+     * @param modelPath Chemin vers le modèle SFace au format ONNX
+     * @throws OrtException si le modèle ne peut pas être chargé
+     */
+    public OnnxEmbeddingEngine(String modelPath) throws OrtException {
+        this(modelPath, 0, 1, OrtSession.SessionOptions.OptLevel.ALL_OPT);
+    }
+
+    @Override
+    public synchronized float[] embed(Mat face) {
+        Imgproc.resize(face, resized, new Size(INPUT_SIZE, INPUT_SIZE), 0, 0, Imgproc.INTER_LINEAR);
+        if (resized.type() != CvType.CV_32FC3) {
+            resized.convertTo(resized, CvType.CV_32F);
+        }
+        resized.get(0, 0, interleaved);
+
+        // HWC (BGR) vers CHW (RGB)
+        for (int pixel = 0, offset = 0; pixel < PLANE; pixel++, offset += 3) {
+            planar[pixel] = interleaved[offset + 2];
+            planar[PLANE + pixel] = interleaved[offset + 1];
+            planar[2 * PLANE + pixel] = interleaved[offset];
+        }
+        inputBuffer.put(0, planar);
+
+        try (OrtSession.Result result = session.run(Map.of(inputName, inputTensor))) {
+            float[][] output = (float[][]) result.get(0).getValue();
+            return output[0];
+        } catch (OrtException e) {
+            throw new IllegalStateException("Échec de l'inférence ONNX Runtime: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "onnxruntime";
+    }
+
+    @Override
+    public synchronized void close() {
+        inputTensor.close();
+        resized.release();
+        try {
+            session.close();
+        } catch (OrtException e) {
+            System.err.println("Erreur lors de la fermeture de la session ONNX Runtime: " + e.getMessage());
+        }
+    }
+}
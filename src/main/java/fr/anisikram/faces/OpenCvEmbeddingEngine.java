@@ -0,0 +1,43 @@
+package fr.anisikram.faces;
+
+import org.opencv.core.Mat;
+import org.opencv.objdetect.FaceRecognizerSF;
+
+/**
+ * Moteur d'extraction reposant sur FaceRecognizerSF (module DNN d'OpenCV).
+ */
+public class OpenCvEmbeddingEngine implements EmbeddingEngine {
+
+    private final FaceRecognizerSF faceRecognizer;
+
+    /**
+     * @param modelPath Chemin vers le fichier du modèle FaceRecognizerSF préentraîné
+     * @param configPath Chemin vers le fichier de configuration (peut être vide)
+     */
+    public OpenCvEmbeddingEngine(String modelPath, String configPath) {
+        this.faceRecognizer = FaceRecognizerSF.create(modelPath, configPath);
+    }
+
+    @Override
+    public float[] embed(Mat face) {
+        Mat feature = new Mat();
+        try {
+            faceRecognizer.feature(face, feature);
+            float[] featureArray = new float[(int) feature.total()];
+            feature.get(0, 0, featureArray);
+            return featureArray;
+        } finally {
+            feature.release();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "opencv";
+    }
+
+    @Override
+    public void close() {
+        // Le modèle est libéré avec l'objet Java
+    }
+}
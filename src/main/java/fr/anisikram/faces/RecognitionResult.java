@@ -0,0 +1,31 @@
+package fr.anisikram.faces;
+
+/**
+ * Résultat d'une reconnaissance : le nom retenu et le score de similarité associé.
+ *
+ * @param name Nom reconnu, {@link #UNKNOWN} ou {@link #ERROR}
+ * @param score Meilleure similarité cosinus trouvée (-1 si aucune comparaison n'a eu lieu)
+ */
+public record RecognitionResult(String name, double score) {
+
+    // Nom renvoyé lorsqu'aucun visage connu ne dépasse le seuil
+    public static final String UNKNOWN = "Inconnu";
+
+    // Nom renvoyé lorsqu'une erreur empêche la reconnaissance
+    public static final String ERROR = "Erreur";
+
+    public static RecognitionResult unknown(double score) {
+        return new RecognitionResult(UNKNOWN, score);
+    }
+
+    public static RecognitionResult error() {
+        return new RecognitionResult(ERROR, -1);
+    }
+
+    /**
+     * @return true si le résultat correspond à une personne connue
+     */
+    public boolean isKnown() {
+        return !UNKNOWN.equals(name) && !ERROR.equals(name);
+    }
+}
@@ -0,0 +1,170 @@
+package fr.anisikram.faces;
+
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ordonnancement des reconnaissances d'une image sous une échéance.
+ * <p>
+ * Les visages sont traités dans l'ordre de priorité : d'abord ceux dont la piste n'a pas encore
+ * d'identité, puis les plus grands. Avant chaque extraction, le coût d'un visage (moyenne mobile
+ * exponentielle des extractions précédentes) est comparé au temps restant : s'il ne tient plus,
+ * le visage est abandonné s'il n'est pas identifié, ou reporté à une image suivante si sa piste
+ * garde une identité. Le premier visage de chaque image est toujours traité : sans cela, une
+ * détection qui consomme à elle seule le budget ferait tout refuser, et le coût estimé ne serait
+ * plus jamais mis à jour. Une image terminée après son échéance compte comme une échéance manquée ;
+ * l'image suivante doit alors être la plus récente de la source, pas une image en attente.
+ */
+public class RecognitionScheduler {
+
+    // Poids d'une nouvelle mesure dans la moyenne mobile du coût d'un visage
+    private static final double COST_SMOOTHING = 0.2;
+
+    private final long budgetNanos;
+
+    private double faceCostNanos = -1;
+    private long deadlineNanos;
+    private int admittedInFrame;
+    private boolean behind;
+
+    // Statistiques
+    private long frames;
+    private long processed;
+    private long shed;
+    private long deferred;
+    private long deadlineMisses;
+    private long staleFrames;
+    private long overrunNanos;
+
+    /**
+     * @param budgetMillis Temps accordé à une image, de sa capture à la fin des reconnaissances
+     */
+    public RecognitionScheduler(double budgetMillis) {
+        this.budgetNanos = (long) (budgetMillis * 1_000_000);
+    }
+
+    /**
+     * Ouvre une nouvelle image ; l'échéance court à partir de sa capture, attente dans la source
+     * comprise : une image rendue en retard par la source entame déjà son budget.
+     *
+     * @param captureNanos Instant où l'image était disponible dans la source ({@link System#nanoTime()})
+     */
+    public void beginFrame(long captureNanos) {
+        deadlineNanos = captureNanos + budgetNanos;
+        admittedInFrame = 0;
+    }
+
+    /**
+     * @param faces Visages détectés
+     * @param tracks Piste associée à chaque visage (même ordre)
+     * @return Les indices des visages dans l'ordre où les traiter
+     */
+    public List<Integer> order(List<Rect> faces, List<FaceTracker.Track> tracks) {
+        List<Integer> indexes = new ArrayList<>(faces.size());
+        for (int i = 0; i < faces.size(); i++) {
+            indexes.add(i);
+        }
+        indexes.sort(Comparator.<Integer, Boolean>comparing(i -> tracks.get(i).isIdentified())
+                .thenComparing(i -> faces.get(i).area(), Comparator.reverseOrder()));
+        return indexes;
+    }
+
+    /**
+     * Indique si le visage suivant peut encore être traité avant l'échéance ; un refus est compté
+     * comme abandon (visage sans identité) ou report (identité déjà connue). Le premier visage de
+     * l'image est toujours admis, ce qui garde l'estimation du coût à jour.
+     *
+     * @param identified true si la piste du visage a déjà une identité
+     */
+    public boolean admit(boolean identified) {
+        // Coût encore inconnu : on mesure
+        if (admittedInFrame == 0 || faceCostNanos < 0 || System.nanoTime() + faceCostNanos <= deadlineNanos) {
+            admittedInFrame++;
+            return true;
+        }
+        if (identified) {
+            deferred++;
+        } else {
+            shed++;
+        }
+        return false;
+    }
+
+    /**
+     * Enregistre la durée d'une extraction suivie de sa reconnaissance.
+     */
+    public void completed(long elapsedNanos) {
+        processed++;
+        faceCostNanos = faceCostNanos < 0 ? elapsedNanos
+                : faceCostNanos + COST_SMOOTHING * (elapsedNanos - faceCostNanos);
+    }
+
+    /**
+     * Ferme l'image courante.
+     *
+     * @return true si l'échéance a été manquée
+     */
+    public boolean endFrame() {
+        frames++;
+        long overrun = System.nanoTime() - deadlineNanos;
+        behind = overrun > 0;
+        if (behind) {
+            deadlineMisses++;
+            overrunNanos += overrun;
+        }
+        return behind;
+    }
+
+    /**
+     * @return true si la dernière image a dépassé son échéance : les images en attente sont périmées
+     */
+    public boolean isBehind() {
+        return behind;
+    }
+
+    /**
+     * Compte les images périmées abandonnées par la source.
+     */
+    public void recordStaleFrames(int count) {
+        staleFrames += count;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getShed() {
+        return shed;
+    }
+
+    public long getDeferred() {
+        return deferred;
+    }
+
+    public long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    public long getStaleFrames() {
+        return staleFrames;
+    }
+
+    /**
+     * @return Coût estimé d'un visage (extraction et reconnaissance), en millisecondes
+     */
+    public double getFaceCostMillis() {
+        return Math.max(0, faceCostNanos) / 1e6;
+    }
+
+    public String getStatistics() {
+        return String.format("images: %d, échéances manquées: %d (%.1f %%, dépassement moyen %.1f ms), "
+                        + "visages traités: %d, abandonnés: %d, reportés: %d, images périmées ignorées: %d, "
+                        + "coût par visage: %.1f ms",
+                frames, deadlineMisses, frames == 0 ? 0 : 100.0 * deadlineMisses / frames,
+                deadlineMisses == 0 ? 0 : overrunNanos / 1e6 / deadlineMisses,
+                processed, shed, deferred, staleFrames, getFaceCostMillis());
+    }
+}
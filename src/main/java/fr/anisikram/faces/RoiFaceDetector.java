@@ -0,0 +1,175 @@
+package fr.anisikram.faces;
+
+import fr.anisikram.memory.MatTracker;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Détection par régions d'intérêt : entre deux analyses complètes de l'image, la cascade n'est
+ * appliquée qu'à des fenêtres élargies autour des derniers visages connus, avec des tailles
+ * minimale et maximale déduites du visage précédent.
+ * Une analyse complète est relancée toutes les {@code fullScanInterval} images, ou dès qu'une
+ * fenêtre ne retrouve plus son visage.
+ */
+public class RoiFaceDetector {
+
+    private final FaceDetector faceDetector;
+
+    // Nombre d'images entre deux analyses complètes
+    private final int fullScanInterval;
+
+    // Marge ajoutée autour du dernier visage, en proportion de sa taille
+    private final double padding;
+
+    // Variation de taille tolérée d'une image à l'autre (0.3 = ±30 %)
+    private final double sizeTolerance;
+
+    private List<Rect> lastFaces = new ArrayList<>();
+    private int framesSinceFullScan;
+
+    // Statistiques
+    private long fullScans;
+    private long roiScans;
+    private long lostWindows;
+    private long fullScanNanos;
+    private long roiScanNanos;
+
+    public RoiFaceDetector(FaceDetector faceDetector, int fullScanInterval, double padding, double sizeTolerance) {
+        this.faceDetector = faceDetector;
+        this.fullScanInterval = Math.max(1, fullScanInterval);
+        this.padding = padding;
+        this.sizeTolerance = sizeTolerance;
+    }
+
+    public RoiFaceDetector(FaceDetector faceDetector, int fullScanInterval) {
+        this(faceDetector, fullScanInterval, 0.5, 0.3);
+    }
+
+    /**
+     * Détecte les visages en privilégiant les fenêtres autour des visages précédents.
+     *
+     * @param image Image couleur ou niveaux de gris
+     * @return Les visages détectés, en coordonnées de l'image
+     */
+    public List<Rect> detectFaces(Mat image) {
+        Mat grayImage = faceDetector.toEqualizedGray(image);
+        try {
+            if (lastFaces.isEmpty() || framesSinceFullScan >= fullScanInterval) {
+                return fullScan(grayImage);
+            }
+
+            long start = System.nanoTime();
+            List<Rect> found = new ArrayList<>(lastFaces.size());
+            boolean lost = false;
+            for (Rect previous : lastFaces) {
+                Rect window = window(previous, grayImage.cols(), grayImage.rows());
+                double side = Math.max(previous.width, previous.height);
+                Size minSize = new Size(side * (1 - sizeTolerance), side * (1 - sizeTolerance));
+                Size maxSize = new Size(
+                        Math.min(side * (1 + sizeTolerance), window.width),
+                        Math.min(side * (1 + sizeTolerance), window.height));
+
+                Mat roi = grayImage.submat(window);
+                List<Rect> detections = faceDetector.detectInGray(roi, minSize, maxSize);
+                roi.release();
+
+                if (detections.isEmpty()) {
+                    lost = true;
+                    break;
+                }
+                for (Rect detection : detections) {
+                    Rect face = new Rect(detection.x + window.x, detection.y + window.y, detection.width, detection.height);
+                    if (!overlapsAny(found, face)) {
+                        found.add(face);
+                    }
+                }
+            }
+            roiScans++;
+            roiScanNanos += System.nanoTime() - start;
+
+            if (lost) {
+                // Une fenêtre a perdu son visage : il a pu sortir de la zone, on réanalyse tout
+                lostWindows++;
+                return fullScan(grayImage);
+            }
+
+            framesSinceFullScan++;
+            lastFaces = found;
+            return found;
+        } finally {
+            MatTracker.release(grayImage);
+        }
+    }
+
+    private List<Rect> fullScan(Mat grayImage) {
+        long start = System.nanoTime();
+        List<Rect> faces = faceDetector.detectInGray(grayImage, faceDetector.getMinFaceSize(), faceDetector.getMaxFaceSize());
+        fullScans++;
+        fullScanNanos += System.nanoTime() - start;
+        framesSinceFullScan = 1;
+        lastFaces = faces;
+        return faces;
+    }
+
+    private Rect window(Rect face, int imageWidth, int imageHeight) {
+        int padX = (int) (face.width * padding);
+        int padY = (int) (face.height * padding);
+        int x = Math.max(0, face.x - padX);
+        int y = Math.max(0, face.y - padY);
+        int right = Math.min(imageWidth, face.x + face.width + padX);
+        int bottom = Math.min(imageHeight, face.y + face.height + padY);
+        return new Rect(x, y, right - x, bottom - y);
+    }
+
+    private static boolean overlapsAny(List<Rect> faces, Rect candidate) {
+        for (Rect face : faces) {
+            if (FaceTracker.iou(face, candidate) > 0.5) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Force une analyse complète à la prochaine image.
+     */
+    public void reset() {
+        lastFaces = new ArrayList<>();
+        framesSinceFullScan = 0;
+    }
+
+    public long getFullScans() {
+        return fullScans;
+    }
+
+    public long getRoiScans() {
+        return roiScans;
+    }
+
+    public long getLostWindows() {
+        return lostWindows;
+    }
+
+    /**
+     * @return Temps moyen d'une analyse complète, en millisecondes
+     */
+    public double getAverageFullScanMillis() {
+        return fullScans == 0 ? 0 : fullScanNanos / 1e6 / fullScans;
+    }
+
+    /**
+     * @return Temps moyen d'une analyse par régions d'intérêt, en millisecondes
+     */
+    public double getAverageRoiScanMillis() {
+        return roiScans == 0 ? 0 : roiScanNanos / 1e6 / roiScans;
+    }
+
+    public String getStatistics() {
+        return String.format("analyses complètes: %d (%.2f ms), analyses ROI: %d (%.2f ms), fenêtres perdues: %d",
+                fullScans, getAverageFullScanMillis(), roiScans, getAverageRoiScanMillis(), lostWindows);
+    }
+}
@@ -0,0 +1,239 @@
+package fr.anisikram.faces;
+
+import fr.anisikram.memory.MatTracker;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Détection par tuiles pour les images de haute résolution : l'image est découpée en tuiles
+ * analysées en parallèle, chacune par sa propre instance de la cascade.
+ * <p>
+ * Chaque tuile « possède » une zone de l'image et la déborde d'une demi-taille de visage maximale
+ * de chaque côté : un visage dont le centre est dans la zone est donc entièrement visible dans la
+ * tuile, et seule la tuile propriétaire le garde. Les quelques doublons restants aux jonctions
+ * (même visage vu par deux tuiles avec un cadre légèrement différent) sont supprimés par NMS.
+ * Les visages plus grands que la taille maximale sont cherchés dans une passe supplémentaire sur
+ * l'image réduite, peu coûteuse.
+ */
+public class TiledFaceDetector implements AutoCloseable {
+
+    // Chevauchement au-delà duquel deux détections sont considérées comme le même visage
+    private static final double NMS_IOU = 0.3;
+    private static final double NMS_CONTAINMENT = 0.7;
+
+    private final FaceDetector faceDetector;
+    private final int threads;
+    private final int defaultMaxFaceSide;
+    private final ExecutorService executor;
+    private final ThreadLocal<CascadeClassifier> classifiers;
+
+    // Statistiques
+    private long frames;
+    private long tiles;
+    private long seamDuplicates;
+    private long detectionNanos;
+
+    /**
+     * @param faceDetector Détecteur dont les paramètres (cascade, tailles minimale et maximale) sont repris
+     * @param threads Nombre de threads d'analyse
+     * @param defaultMaxFaceSide Côté maximal d'un visage cherché dans les tuiles lorsque le détecteur
+     *                           n'impose pas de taille maximale (pixels)
+     */
+    public TiledFaceDetector(FaceDetector faceDetector, int threads, int defaultMaxFaceSide) {
+        this.faceDetector = faceDetector;
+        this.threads = Math.max(1, threads);
+        this.defaultMaxFaceSide = defaultMaxFaceSide;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "detection-tuile-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Une cascade ne doit pas être partagée entre threads : chaque thread charge la sienne
+        this.classifiers = ThreadLocal.withInitial(faceDetector::newClassifier);
+    }
+
+    public TiledFaceDetector(FaceDetector faceDetector, int threads) {
+        this(faceDetector, threads, 400);
+    }
+
+    public TiledFaceDetector(FaceDetector faceDetector) {
+        this(faceDetector, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Détecte les visages de l'image en analysant ses tuiles en parallèle.
+     *
+     * @param image Image couleur ou niveaux de gris
+     * @return Les visages détectés, en coordonnées de l'image
+     */
+    public List<Rect> detectFaces(Mat image) {
+        long start = System.nanoTime();
+        Mat grayImage = faceDetector.toEqualizedGray(image);
+        try {
+            int width = grayImage.cols();
+            int height = grayImage.rows();
+            Size minSize = faceDetector.getMinFaceSize();
+            Size maxSize = faceDetector.getMaxFaceSize();
+            int maxFaceSide = maxSize.width > 0 ? (int) maxSize.width : defaultMaxFaceSide;
+
+            // Zone possédée par une tuile : au moins deux visages maximaux, et environ une tuile par thread
+            int core = (int) Math.max(2L * maxFaceSide, Math.ceil(Math.sqrt((double) width * height / threads)));
+            if (core >= width && core >= height) {
+                // Image trop petite pour être découpée
+                frames++;
+                tiles++;
+                detectionNanos += System.nanoTime() - start;
+                return faceDetector.detectInGray(grayImage, minSize, maxSize);
+            }
+
+            int overlap = (maxFaceSide + 1) / 2;
+            Size tileMaxSize = new Size(maxFaceSide, maxFaceSide);
+            List<Mat> regions = new ArrayList<>();
+            List<Callable<List<Rect>>> tasks = new ArrayList<>();
+            for (int y0 = 0; y0 < height; y0 += core) {
+                for (int x0 = 0; x0 < width; x0 += core) {
+                    Rect owned = new Rect(x0, y0, Math.min(core, width - x0), Math.min(core, height - y0));
+                    int x = Math.max(0, x0 - overlap);
+                    int y = Math.max(0, y0 - overlap);
+                    Rect tile = new Rect(x, y,
+                            Math.min(width, owned.x + owned.width + overlap) - x,
+                            Math.min(height, owned.y + owned.height + overlap) - y);
+                    Mat region = grayImage.submat(tile);
+                    regions.add(region);
+                    tasks.add(() -> detectInTile(region, tile, owned, minSize, tileMaxSize));
+                }
+            }
+            if (maxSize.width <= 0 || maxSize.width > maxFaceSide) {
+                tasks.add(() -> detectLargeFaces(grayImage, minSize, maxFaceSide, maxSize));
+            }
+
+            List<Rect> candidates = new ArrayList<>();
+            try {
+                for (Future<List<Rect>> result : executor.invokeAll(tasks)) {
+                    candidates.addAll(result.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new ArrayList<>();
+            } catch (ExecutionException e) {
+                System.err.println("Erreur lors de la détection par tuiles : " + e.getCause().getMessage());
+                return new ArrayList<>();
+            } finally {
+                regions.forEach(Mat::release);
+            }
+
+            List<Rect> faces = suppressDuplicates(candidates);
+            frames++;
+            tiles += regions.size();
+            seamDuplicates += candidates.size() - faces.size();
+            detectionNanos += System.nanoTime() - start;
+            return faces;
+        } finally {
+            MatTracker.release(grayImage);
+        }
+    }
+
+    /**
+     * Analyse une tuile et ne garde que les visages dont le centre est dans sa zone.
+     */
+    private List<Rect> detectInTile(Mat region, Rect tile, Rect owned, Size minSize, Size maxSize) {
+        List<Rect> faces = new ArrayList<>();
+        for (Rect detection : faceDetector.detectInGray(classifiers.get(), region, minSize, maxSize)) {
+            Rect face = new Rect(detection.x + tile.x, detection.y + tile.y, detection.width, detection.height);
+            int centerX = face.x + face.width / 2;
+            int centerY = face.y + face.height / 2;
+            if (centerX >= owned.x && centerX < owned.x + owned.width
+                    && centerY >= owned.y && centerY < owned.y + owned.height) {
+                faces.add(face);
+            }
+        }
+        return faces;
+    }
+
+    /**
+     * Cherche les visages plus grands que la taille maximale des tuiles sur l'image réduite,
+     * de sorte que la taille minimale de la cascade y corresponde à cette taille maximale.
+     */
+    private List<Rect> detectLargeFaces(Mat grayImage, Size minSize, int maxFaceSide, Size maxSize) {
+        double scale = Math.min(1, minSize.width / maxFaceSide);
+        Mat small = new Mat();
+        Imgproc.resize(grayImage, small, new Size(), scale, scale, Imgproc.INTER_AREA);
+        Size smallMaxSize = maxSize.width > 0 ? new Size(maxSize.width * scale, maxSize.height * scale) : maxSize;
+        List<Rect> faces = new ArrayList<>();
+        for (Rect detection : faceDetector.detectInGray(classifiers.get(), small, minSize, smallMaxSize)) {
+            faces.add(new Rect((int) Math.round(detection.x / scale), (int) Math.round(detection.y / scale),
+                    (int) Math.round(detection.width / scale), (int) Math.round(detection.height / scale)));
+        }
+        small.release();
+        return faces;
+    }
+
+    /**
+     * Suppression des non-maxima : la cascade ne fournit pas de score, le plus grand cadre l'emporte.
+     */
+    static List<Rect> suppressDuplicates(List<Rect> candidates) {
+        List<Rect> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingDouble(Rect::area).reversed());
+        List<Rect> kept = new ArrayList<>(sorted.size());
+        for (Rect candidate : sorted) {
+            boolean duplicate = false;
+            for (Rect face : kept) {
+                if (FaceTracker.iou(face, candidate) > NMS_IOU || containment(face, candidate) > NMS_CONTAINMENT) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                kept.add(candidate);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return Part du plus petit cadre couverte par l'autre
+     */
+    private static double containment(Rect a, Rect b) {
+        int width = Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x);
+        int height = Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        return (double) width * height / Math.min(a.area(), b.area());
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return Temps moyen de détection d'une image, en millisecondes
+     */
+    public double getAverageDetectionMillis() {
+        return frames == 0 ? 0 : detectionNanos / 1e6 / frames;
+    }
+
+    public String getStatistics() {
+        return String.format("images: %d, tuiles par image: %.1f, temps moyen: %.2f ms, doublons aux jonctions: %d, threads: %d",
+                frames, frames == 0 ? 0 : (double) tiles / frames, getAverageDetectionMillis(), seamDuplicates, threads);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,308 @@
+package fr.anisikram.gallery;
+
+import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceRecognizer;
+import fr.anisikram.memory.MatTracker;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Enrôlement en masse à partir d'une arborescence d'images : un dossier par personne, dont le
+ * nom est celui de la personne. Le décodage, la détection et l'extraction des caractéristiques
+ * sont répartis sur un pool fork-join ; les vecteurs quasi identiques d'une même personne sont
+ * écartés, puis la base est écrite en une seule fois.
+ *
+ * <pre>
+ * java fr.anisikram.gallery.BulkEnroller &lt;dossier&gt; &lt;base de sortie&gt;
+ *      [--model chemin.onnx] [--threads N] [--duplicate-threshold 0.95]
+ * </pre>
+ */
+public class BulkEnroller implements AutoCloseable {
+
+    private static final String DEFAULT_MODEL = "models/face_recognition_sface_2021dec.onnx";
+
+    // Attente maximale de la fin des extractions en cours après un échec (une image prend bien moins)
+    private static final long POOL_TERMINATION_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Motifs de rejet d'une image.
+     */
+    public enum Rejection {
+        DECODE_FAILED,
+        NO_FACE,
+        MULTIPLE_FACES,
+        EXTRACTION_FAILED,
+        NEAR_DUPLICATE
+    }
+
+    private record Sample(String name, Path image) {
+    }
+
+    private record Extraction(Sample sample, float[] feature, Rejection rejection) {
+    }
+
+    private final String modelPath;
+    private final double duplicateThreshold;
+    private final int parallelism;
+
+    // Détecteur et reconnaisseur propres à chaque thread du pool (les objets OpenCV ne sont pas partagés),
+    // conservés aussi dans des listes pour être libérés depuis le thread appelant
+    private final ConcurrentLinkedQueue<FaceDetector> detectors = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<FaceRecognizer> recognizers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<FaceDetector> detector;
+    private final ThreadLocal<FaceRecognizer> recognizer;
+
+    public BulkEnroller(String modelPath, double duplicateThreshold, int parallelism) {
+        this.modelPath = modelPath;
+        this.duplicateThreshold = duplicateThreshold;
+        this.parallelism = parallelism;
+        this.detector = ThreadLocal.withInitial(() -> {
+            FaceDetector faceDetector = new FaceDetector();
+            detectors.add(faceDetector);
+            return faceDetector;
+        });
+        this.recognizer = ThreadLocal.withInitial(() -> {
+            FaceRecognizer faceRecognizer = new FaceRecognizer(this.modelPath);
+            recognizers.add(faceRecognizer);
+            return faceRecognizer;
+        });
+    }
+
+    /**
+     * Bilan d'un enrôlement en masse.
+     *
+     * @param gallery Base produite
+     * @param images Nombre d'images traitées
+     * @param identities Nombre de personnes ayant au moins un visage retenu
+     * @param seconds Durée totale
+     * @param rejections Nombre d'images écartées par motif
+     */
+    public record Report(GalleryFile gallery, int images, int identities, double seconds,
+                         Map<Rejection, Integer> rejections) {
+
+        public void print() {
+            System.out.println("=== Enrôlement en masse ===");
+            System.out.println("Images traitées   : " + images);
+            System.out.println("Visages retenus   : " + gallery.size() + " (" + identities + " personnes)");
+            System.out.printf(Locale.ROOT, "Durée             : %.1f s (%.1f images/s)%n", seconds, images / seconds);
+            System.out.println("Images écartées   :");
+            for (Rejection rejection : Rejection.values()) {
+                System.out.println("  " + rejection + " : " + rejections.getOrDefault(rejection, 0));
+            }
+        }
+    }
+
+    /**
+     * Enrôle toutes les images d'une arborescence.
+     *
+     * @param root Dossier racine contenant un sous-dossier par personne
+     * @return Le bilan et la base produite
+     */
+    public Report enroll(Path root) throws IOException, InterruptedException {
+        List<Sample> samples = listSamples(root);
+        long start = System.nanoTime();
+
+        List<Extraction> extractions;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            extractions = pool.submit(() -> samples.parallelStream().map(this::extract).toList()).get();
+        } catch (ExecutionException e) {
+            throw new IOException("Échec de l'extraction: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Après un échec ou une interruption, d'autres tâches du flux parallèle peuvent encore
+            // utiliser leurs détecteurs et reconnaisseurs : on attend leur fin avant de les libérer
+            pool.shutdownNow();
+            if (awaitTermination(pool)) {
+                close();
+            } else {
+                System.err.println("Extractions toujours en cours : détecteurs et reconnaisseurs non libérés");
+            }
+        }
+
+        // Filtrage des quasi-doublons, personne par personne, dans l'ordre des fichiers
+        Map<Rejection, Integer> rejections = new EnumMap<>(Rejection.class);
+        Map<String, List<float[]>> accepted = new LinkedHashMap<>();
+        for (Extraction extraction : extractions) {
+            if (extraction.rejection() != null) {
+                rejections.merge(extraction.rejection(), 1, Integer::sum);
+                continue;
+            }
+            float[] feature = LocalGalleryShard.normalize(extraction.feature());
+            List<float[]> kept = accepted.computeIfAbsent(extraction.sample().name(), n -> new ArrayList<>());
+            if (isNearDuplicate(kept, feature)) {
+                rejections.merge(Rejection.NEAR_DUPLICATE, 1, Integer::sum);
+            } else {
+                kept.add(feature);
+            }
+        }
+
+        List<String> names = new ArrayList<>();
+        List<float[]> features = new ArrayList<>();
+        int identities = 0;
+        for (Map.Entry<String, List<float[]>> entry : accepted.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                identities++;
+            }
+            for (float[] feature : entry.getValue()) {
+                names.add(entry.getKey());
+                features.add(feature);
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new Report(new GalleryFile(names, features), samples.size(), identities, seconds, rejections);
+    }
+
+    private Extraction extract(Sample sample) {
+        Mat image = Imgcodecs.imread(sample.image().toString(), Imgcodecs.IMREAD_COLOR);
+        try {
+            if (image.empty()) {
+                return new Extraction(sample, null, Rejection.DECODE_FAILED);
+            }
+            FaceDetector faceDetector = detector.get();
+            List<Rect> faces = faceDetector.detectFaces(image);
+            if (faces.isEmpty()) {
+                return new Extraction(sample, null, Rejection.NO_FACE);
+            }
+            if (faces.size() > 1) {
+                return new Extraction(sample, null, Rejection.MULTIPLE_FACES);
+            }
+            Mat face = FaceDetector.extractFace(image, faces.getFirst(), true);
+            float[] feature = recognizer.get().extractFeature(face);
+            MatTracker.release(face);
+            if (feature == null) {
+                return new Extraction(sample, null, Rejection.EXTRACTION_FAILED);
+            }
+            return new Extraction(sample, feature, null);
+        } finally {
+            image.release();
+        }
+    }
+
+    /**
+     * Attend l'arrêt du pool, même si le thread appelant est interrompu (l'interruption est rétablie).
+     *
+     * @return false si des tâches tournent encore après le délai
+     */
+    private static boolean awaitTermination(ForkJoinPool pool) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pool.awaitTermination(POOL_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Libère les détecteurs et reconnaisseurs créés par les threads d'extraction.
+     */
+    @Override
+    public void close() {
+        FaceDetector faceDetector;
+        while ((faceDetector = detectors.poll()) != null) {
+            faceDetector.release();
+        }
+        FaceRecognizer faceRecognizer;
+        while ((faceRecognizer = recognizers.poll()) != null) {
+            faceRecognizer.release();
+        }
+    }
+
+    private boolean isNearDuplicate(List<float[]> kept, float[] feature) {
+        for (float[] other : kept) {
+            double dot = 0;
+            for (int i = 0; i < feature.length; i++) {
+                dot += feature[i] * other[i];
+            }
+            if (dot >= duplicateThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Sample> listSamples(Path root) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        try (Stream<Path> people = Files.list(root)) {
+            for (Path person : people.filter(Files::isDirectory).sorted().toList()) {
+                String name = person.getFileName().toString().trim();
+                try (Stream<Path> images = Files.walk(person)) {
+                    images.filter(Files::isRegularFile)
+                            .filter(BulkEnroller::isImage)
+                            .sorted()
+                            .forEach(image -> samples.add(new Sample(name, image)));
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static boolean isImage(Path path) {
+        String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") || fileName.endsWith(".png")
+                || fileName.endsWith(".bmp") || fileName.endsWith(".webp");
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage : BulkEnroller <dossier> <base de sortie> [--model chemin.onnx] "
+                    + "[--threads N] [--duplicate-threshold 0.95]");
+            System.exit(1);
+        }
+        Path root = Path.of(args[0]);
+        String output = args[1];
+        String modelPath = DEFAULT_MODEL;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double duplicateThreshold = 0.95;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model" -> modelPath = args[++i];
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--duplicate-threshold" -> duplicateThreshold = Double.parseDouble(args[++i]);
+                default -> {
+                    System.out.println("Option inconnue : " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        OpenCV.loadLocally();
+        Report report;
+        try (BulkEnroller enroller = new BulkEnroller(modelPath, duplicateThreshold, threads)) {
+            report = enroller.enroll(root);
+        }
+        report.print();
+
+        if (report.gallery().size() == 0) {
+            System.err.println("Aucun visage retenu : la base n'a pas été écrite.");
+            System.exit(1);
+        }
+        report.gallery().write(output);
+        System.out.println("Base de données écrite dans '" + output + "'.");
+    }
+}
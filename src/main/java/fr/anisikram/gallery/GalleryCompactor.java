@@ -0,0 +1,304 @@
+package fr.anisikram.gallery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compactage d'une base de visages. Les vecteurs de chaque personne sont regroupés (k-médoïdes
+ * sur la similarité cosinus) et seuls les médoïdes sont conservés : un sous-ensemble borné et
+ * varié qui remplace les vecteurs quasi identiques accumulés par les ajouts successifs.
+ * Les paires de personnes dont les médoïdes sont trop proches sont signalées.
+ */
+public class GalleryCompactor {
+
+    // Nombre maximal d'itérations d'affectation/mise à jour des médoïdes
+    private static final int MAX_ITERATIONS = 10;
+
+    // Similarité au-delà de laquelle deux médoïdes sont considérés comme identiques
+    private static final double IDENTICAL_SIMILARITY = 0.999;
+
+    // Résultat des mesures, conservé pour que le compilateur n'élimine pas la boucle mesurée
+    private static volatile double blackhole;
+
+    private final int maxPerIdentity;
+    private final double collisionThreshold;
+
+    /**
+     * @param maxPerIdentity Nombre maximal de vecteurs conservés par personne
+     * @param collisionThreshold Similarité à partir de laquelle deux personnes sont jugées trop proches
+     */
+    public GalleryCompactor(int maxPerIdentity, double collisionThreshold) {
+        if (maxPerIdentity <= 0) {
+            throw new IllegalArgumentException("Au moins un vecteur par personne doit être conservé");
+        }
+        this.maxPerIdentity = maxPerIdentity;
+        this.collisionThreshold = collisionThreshold;
+    }
+
+    public GalleryCompactor() {
+        this(5, 0.7);
+    }
+
+    /**
+     * Deux personnes dont des vecteurs sont plus proches que le seuil de collision.
+     */
+    public record Collision(String first, String second, double similarity) {
+    }
+
+    /**
+     * Résultat d'un compactage.
+     *
+     * @param gallery Base compactée
+     * @param originalSize Nombre de vecteurs avant compactage
+     * @param collisions Paires de personnes trop proches
+     * @param matchMillisBefore Temps moyen d'une comparaison à toute la base avant compactage
+     * @param matchMillisAfter Temps moyen d'une comparaison à toute la base après compactage
+     */
+    public record Result(GalleryFile gallery, int originalSize, List<Collision> collisions,
+                         double matchMillisBefore, double matchMillisAfter) {
+
+        public void print() {
+            System.out.println("=== Compactage de la base ===");
+            System.out.printf(Locale.ROOT, "Vecteurs          : %d -> %d (-%.1f %%)%n", originalSize, gallery.size(),
+                    originalSize == 0 ? 0 : 100.0 * (originalSize - gallery.size()) / originalSize);
+            System.out.printf(Locale.ROOT, "Temps de recherche: %.3f ms -> %.3f ms%n", matchMillisBefore, matchMillisAfter);
+            if (collisions.isEmpty()) {
+                System.out.println("Aucune collision entre personnes.");
+            } else {
+                System.out.println("Collisions entre personnes :");
+                for (Collision collision : collisions) {
+                    System.out.printf(Locale.ROOT, "  '%s' / '%s' : %.3f%n",
+                            collision.first(), collision.second(), collision.similarity());
+                }
+            }
+        }
+    }
+
+    /**
+     * Compacte une base.
+     *
+     * @param gallery Base d'origine (non modifiée)
+     * @return La base compactée et le bilan
+     */
+    public Result compact(GalleryFile gallery) {
+        // Regroupement des vecteurs normalisés par personne, dans l'ordre d'apparition
+        Map<String, List<float[]>> byIdentity = new LinkedHashMap<>();
+        for (int i = 0; i < gallery.size(); i++) {
+            byIdentity.computeIfAbsent(gallery.names().get(i), n -> new ArrayList<>())
+                    .add(LocalGalleryShard.normalize(gallery.features().get(i)));
+        }
+
+        List<String> names = new ArrayList<>();
+        List<float[]> features = new ArrayList<>();
+        Map<String, List<float[]>> medoidsByIdentity = new LinkedHashMap<>();
+        for (Map.Entry<String, List<float[]>> entry : byIdentity.entrySet()) {
+            List<float[]> medoids = medoids(entry.getValue());
+            medoidsByIdentity.put(entry.getKey(), medoids);
+            for (float[] medoid : medoids) {
+                names.add(entry.getKey());
+                features.add(medoid);
+            }
+        }
+        GalleryFile compacted = new GalleryFile(names, features);
+
+        return new Result(compacted, gallery.size(), findCollisions(medoidsByIdentity),
+                measureMatchMillis(gallery.features()), measureMatchMillis(features));
+    }
+
+    /**
+     * Sélectionne au plus {@code maxPerIdentity} médoïdes parmi les vecteurs d'une personne.
+     */
+    List<float[]> medoids(List<float[]> vectors) {
+        int n = vectors.size();
+        if (n <= maxPerIdentity) {
+            return vectors;
+        }
+
+        double[][] similarity = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            similarity[i][i] = 1;
+            for (int j = i + 1; j < n; j++) {
+                similarity[i][j] = similarity[j][i] = dot(vectors.get(i), vectors.get(j));
+            }
+        }
+
+        // Initialisation : le vecteur le plus central, puis les plus éloignés des médoïdes déjà choisis
+        int k = maxPerIdentity;
+        int[] medoids = new int[k];
+        medoids[0] = mostCentral(similarity, allIndexes(n));
+        double[] closest = similarity[medoids[0]].clone();
+        for (int m = 1; m < k; m++) {
+            int farthest = 0;
+            for (int i = 1; i < n; i++) {
+                if (closest[i] < closest[farthest]) {
+                    farthest = i;
+                }
+            }
+            medoids[m] = farthest;
+            for (int i = 0; i < n; i++) {
+                closest[i] = Math.max(closest[i], similarity[farthest][i]);
+            }
+        }
+
+        // Affectation au médoïde le plus proche, puis recentrage de chaque groupe
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            List<List<Integer>> clusters = new ArrayList<>(k);
+            for (int m = 0; m < k; m++) {
+                clusters.add(new ArrayList<>());
+            }
+            for (int i = 0; i < n; i++) {
+                int best = 0;
+                for (int m = 1; m < k; m++) {
+                    if (similarity[medoids[m]][i] > similarity[medoids[best]][i]) {
+                        best = m;
+                    }
+                }
+                clusters.get(best).add(i);
+            }
+
+            boolean changed = false;
+            for (int m = 0; m < k; m++) {
+                if (clusters.get(m).isEmpty()) {
+                    continue;
+                }
+                int center = mostCentral(similarity, clusters.get(m));
+                if (center != medoids[m]) {
+                    medoids[m] = center;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+
+        // Des vecteurs identiques peuvent donner plusieurs fois le même médoïde : on n'en garde qu'un
+        List<Integer> kept = new ArrayList<>(k);
+        for (int medoid : medoids) {
+            boolean duplicate = false;
+            for (int other : kept) {
+                if (similarity[medoid][other] >= IDENTICAL_SIMILARITY) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                kept.add(medoid);
+            }
+        }
+        List<float[]> selected = new ArrayList<>(kept.size());
+        for (int medoid : kept) {
+            selected.add(vectors.get(medoid));
+        }
+        return selected;
+    }
+
+    private static int mostCentral(double[][] similarity, List<Integer> members) {
+        int best = members.getFirst();
+        double bestSum = Double.NEGATIVE_INFINITY;
+        for (int candidate : members) {
+            double sum = 0;
+            for (int other : members) {
+                sum += similarity[candidate][other];
+            }
+            if (sum > bestSum) {
+                bestSum = sum;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static List<Integer> allIndexes(int n) {
+        List<Integer> indexes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private List<Collision> findCollisions(Map<String, List<float[]>> medoidsByIdentity) {
+        List<String> identities = new ArrayList<>(medoidsByIdentity.keySet());
+        List<Collision> collisions = new ArrayList<>();
+        for (int a = 0; a < identities.size(); a++) {
+            for (int b = a + 1; b < identities.size(); b++) {
+                double best = Double.NEGATIVE_INFINITY;
+                for (float[] u : medoidsByIdentity.get(identities.get(a))) {
+                    for (float[] v : medoidsByIdentity.get(identities.get(b))) {
+                        best = Math.max(best, dot(u, v));
+                    }
+                }
+                if (best >= collisionThreshold) {
+                    collisions.add(new Collision(identities.get(a), identities.get(b), best));
+                }
+            }
+        }
+        collisions.sort((x, y) -> Double.compare(y.similarity(), x.similarity()));
+        return collisions;
+    }
+
+    /**
+     * Mesure le temps moyen d'une recherche exhaustive (un produit scalaire par vecteur de la base).
+     */
+    private static double measureMatchMillis(List<float[]> features) {
+        if (features.isEmpty()) {
+            return 0;
+        }
+        int queries = Math.min(200, features.size());
+        double sink = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            float[] query = features.get(q * features.size() / queries);
+            for (float[] feature : features) {
+                sink += dot(query, feature);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        blackhole = sink;
+        return elapsed / 1e6 / queries;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage : GalleryCompactor <base> [--output base] [--max-per-identity 5] "
+                    + "[--collision-threshold 0.7] [--dry-run]");
+            System.exit(1);
+        }
+        String input = args[0];
+        String output = input;
+        int maxPerIdentity = 5;
+        double collisionThreshold = 0.7;
+        boolean dryRun = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output" -> output = args[++i];
+                case "--max-per-identity" -> maxPerIdentity = Integer.parseInt(args[++i]);
+                case "--collision-threshold" -> collisionThreshold = Double.parseDouble(args[++i]);
+                case "--dry-run" -> dryRun = true;
+                default -> {
+                    System.out.println("Option inconnue : " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        Result result = new GalleryCompactor(maxPerIdentity, collisionThreshold).compact(GalleryFile.read(input));
+        result.print();
+        if (!dryRun) {
+            result.gallery().write(output);
+            System.out.println("Base compactée écrite dans '" + output + "'.");
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package fr.anisikram.gallery;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Lecture et écriture de la base de visages sur disque : {@code base.features} contient la liste
+ * sérialisée des vecteurs et {@code base.names} les noms associés, un par ligne, dans le même ordre.
+ * <p>
+ * Les deux fichiers ne peuvent pas être remplacés ensemble atomiquement : l'en-tête du fichier des
+ * vecteurs porte donc l'empreinte (CRC32) du fichier des noms écrit avec lui, et la lecture refuse une
+ * paire dont les empreintes diffèrent (un fichier déjà remplacé, l'autre pas encore). Les fichiers
+ * sans en-tête, écrits par les versions précédentes, restent lisibles sans cette vérification.
+ *
+ * @param names Noms des visages
+ * @param features Vecteurs de caractéristiques (même index que {@code names})
+ */
+public record GalleryFile(List<String> names, List<float[]> features) {
+
+    public static final String FEATURES_EXTENSION = ".features";
+    public static final String NAMES_EXTENSION = ".names";
+
+    // En-tête du fichier des vecteurs, suivi de l'empreinte du fichier des noms (long)
+    private static final String FORMAT_HEADER = "fr.anisikram.gallery/2";
+
+    /**
+     * Levée quand les deux fichiers ne proviennent pas de la même écriture : un remplacement est en
+     * cours, une nouvelle lecture un peu plus tard trouvera la paire complète.
+     */
+    public static class MismatchedFilesException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public MismatchedFilesException(String message) {
+            super(message);
+        }
+    }
+
+    public GalleryFile {
+        if (names.size() != features.size()) {
+            throw new IllegalArgumentException("Les données sont incohérentes: " +
+                    features.size() + " caractéristiques vs " + names.size() + " noms");
+        }
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Vérifie que la base est utilisable : noms renseignés, vecteurs de même dimension et valeurs finies.
+     *
+     * @throws IllegalArgumentException si la base est invalide
+     */
+    public void validate() {
+        int dimension = features.isEmpty() ? 0 : features.getFirst().length;
+        for (int i = 0; i < features.size(); i++) {
+            String name = names.get(i);
+            if (name == null || name.isBlank()) {
+                throw new IllegalArgumentException("Nom vide à l'index " + i);
+            }
+            float[] feature = features.get(i);
+            if (feature == null || feature.length != dimension || dimension == 0) {
+                throw new IllegalArgumentException("Vecteur de dimension incohérente à l'index " + i);
+            }
+            for (float value : feature) {
+                if (!Float.isFinite(value)) {
+                    throw new IllegalArgumentException("Valeur non finie dans le vecteur à l'index " + i);
+                }
+            }
+        }
+    }
+
+    public static Path featuresPath(String basePath) {
+        return Paths.get(basePath + FEATURES_EXTENSION);
+    }
+
+    public static Path namesPath(String basePath) {
+        return Paths.get(basePath + NAMES_EXTENSION);
+    }
+
+    public static boolean exists(String basePath) {
+        return Files.exists(featuresPath(basePath)) && Files.exists(namesPath(basePath));
+    }
+
+    /**
+     * Lit une base de visages.
+     *
+     * @param basePath Chemin de la base, sans extension
+     * @return Le contenu de la base
+     * @throws MismatchedFilesException si les deux fichiers ne proviennent pas de la même écriture
+     * @throws IOException si les fichiers sont absents, illisibles ou incohérents
+     */
+    @SuppressWarnings("unchecked")
+    public static GalleryFile read(String basePath) throws IOException {
+        if (!exists(basePath)) {
+            throw new IOException("Fichiers de base de données introuvables: " + basePath);
+        }
+        byte[] namesContent = Files.readAllBytes(namesPath(basePath));
+        String[] names = new String(namesContent, StandardCharsets.UTF_8).split("\n");
+
+        List<float[]> features;
+        try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(featuresPath(basePath)))) {
+            Object first = ois.readObject();
+            if (FORMAT_HEADER.equals(first)) {
+                long expected = ois.readLong();
+                if (expected != checksum(namesContent)) {
+                    throw new MismatchedFilesException("Les fichiers de la base ne proviennent pas de la même écriture: "
+                            + basePath);
+                }
+                features = (List<float[]>) ois.readObject();
+            } else {
+                // Fichier sans en-tête (ancien format)
+                features = (List<float[]>) first;
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Format de fichier non compatible: " + e.getMessage(), e);
+        }
+
+        if (features.size() != names.length) {
+            throw new IOException("Les données chargées sont incohérentes: " +
+                    features.size() + " caractéristiques vs " + names.length + " noms");
+        }
+        return new GalleryFile(List.of(names), features);
+    }
+
+    /**
+     * Écrit une base de visages. Chaque fichier est d'abord écrit à côté de sa destination puis
+     * renommé atomiquement ; entre les deux renommages, {@link #read(String)} détecte la paire
+     * incomplète grâce à l'empreinte des noms.
+     *
+     * @param basePath Chemin de la base, sans extension
+     */
+    public void write(String basePath) throws IOException {
+        Path featuresPath = featuresPath(basePath);
+        Path parent = featuresPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path featuresTmp = Files.createTempFile(parent, featuresPath.getFileName().toString(), ".tmp");
+        Path namesTmp = Files.createTempFile(parent, namesPath(basePath).getFileName().toString(), ".tmp");
+        try {
+            byte[] namesContent = String.join("\n", names).getBytes(StandardCharsets.UTF_8);
+            try (OutputStream os = Files.newOutputStream(featuresTmp);
+                 ObjectOutputStream oos = new ObjectOutputStream(os)) {
+                oos.writeObject(FORMAT_HEADER);
+                oos.writeLong(checksum(namesContent));
+                oos.writeObject(new ArrayList<>(features));
+            }
+            Files.write(namesTmp, namesContent);
+
+            moveAtomically(featuresTmp, featuresPath);
+            moveAtomically(namesTmp, namesPath(basePath));
+        } finally {
+            Files.deleteIfExists(featuresTmp);
+            Files.deleteIfExists(namesTmp);
+        }
+    }
+
+    private static long checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
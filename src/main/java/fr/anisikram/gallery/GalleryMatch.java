@@ -0,0 +1,10 @@
+package fr.anisikram.gallery;
+
+/**
+ * Correspondance trouvée dans une galerie.
+ *
+ * @param name Nom de la personne
+ * @param score Similarité cosinus avec la requête
+ */
+public record GalleryMatch(String name, double score) {
+}
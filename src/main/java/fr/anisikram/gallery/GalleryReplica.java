@@ -0,0 +1,229 @@
+package fr.anisikram.gallery;
+
+import fr.anisikram.faces.FaceRecognizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Réplica en lecture de la base d'un {@link GalleryReplicationPrimary} : les modifications reçues
+ * sont appliquées une à une à la base du reconnaisseur local, sans rechargement complet.
+ * Après une coupure, le réplica se reconnecte et reprend à sa dernière séquence appliquée ; le
+ * primaire lui envoie un instantané s'il est trop en retard.
+ * <p>
+ * Les enregistrements doivent se faire sur le primaire : un visage ajouté localement sur un réplica
+ * disparaîtrait au prochain instantané. L'application et le service HTTP refusent donc toute
+ * modification locale de la base tant qu'un réplica est actif.
+ */
+public class GalleryReplica implements AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+
+    // Délai avant une nouvelle tentative de connexion
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private final FaceRecognizer faceRecognizer;
+    private final InetSocketAddress primary;
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private volatile Socket socket;
+    private volatile LongConsumer applyListener;
+
+    // État de réplication : époque du primaire et dernière séquence appliquée (-1 = aucune)
+    private long epoch;
+    private volatile long lastApplied = -1;
+    private volatile long primarySequence = -1;
+
+    // Statistiques
+    private volatile long deltasApplied;
+    private volatile long snapshotsApplied;
+    private volatile long reconnections;
+    private volatile long propagationMillisTotal;
+    private volatile long propagationMillisMax;
+
+    /**
+     * @param faceRecognizer Reconnaisseur dont la base suit celle du primaire
+     * @param primary Adresse du primaire
+     */
+    public GalleryReplica(FaceRecognizer faceRecognizer, InetSocketAddress primary) {
+        this.faceRecognizer = faceRecognizer;
+        this.primary = primary;
+        this.thread = new Thread(this::run, "gallery-replica");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * @param address Adresse du primaire, sous la forme {@code hôte:port}
+     * @throws IllegalArgumentException si l'adresse est mal formée
+     */
+    public static InetSocketAddress parseAddress(String address) {
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Adresse attendue sous la forme hôte:port : " + address);
+        }
+        return new InetSocketAddress(address.substring(0, separator),
+                Integer.parseInt(address.substring(separator + 1)));
+    }
+
+    /**
+     * Installe une fonction appelée avec la séquence après chaque instantané ou modification appliqué.
+     */
+    public void setApplyListener(LongConsumer listener) {
+        this.applyListener = listener;
+    }
+
+    public void start() {
+        thread.start();
+        System.out.println("Réplication de la base : réplica de " + primary.getHostString() + ":" + primary.getPort());
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                replicate();
+            } catch (EOFException e) {
+                if (!closed) {
+                    System.err.println("Réplication interrompue (séquence " + lastApplied + "): connexion fermée par le primaire");
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                if (!closed) {
+                    System.err.println("Réplication interrompue (séquence " + lastApplied + "): " + e.getMessage());
+                }
+            }
+            if (closed) {
+                return;
+            }
+            reconnections++;
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void replicate() throws IOException {
+        try (Socket connection = new Socket()) {
+            socket = connection;
+            connection.connect(primary, CONNECT_TIMEOUT_MS);
+            connection.setTcpNoDelay(true);
+            connection.setSoTimeout(ReplicationProtocol.READ_TIMEOUT_MS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            out.writeByte(ReplicationProtocol.HELLO);
+            out.writeLong(epoch);
+            out.writeLong(lastApplied);
+            out.flush();
+
+            while (!closed) {
+                byte type = in.readByte();
+                switch (type) {
+                    case ReplicationProtocol.SNAPSHOT -> applySnapshot(in);
+                    case ReplicationProtocol.ADD, ReplicationProtocol.REMOVE -> applyDelta(type, in);
+                    case ReplicationProtocol.HEARTBEAT -> primarySequence = in.readLong();
+                    default -> throw new IOException("Message inconnu : " + type);
+                }
+            }
+        } finally {
+            socket = null;
+        }
+    }
+
+    private void applySnapshot(DataInputStream in) throws IOException {
+        long snapshotEpoch = in.readLong();
+        long sequence = in.readLong();
+        int size = in.readInt();
+        if (size < 0 || size > ReplicationProtocol.MAX_SNAPSHOT_SIZE) {
+            throw new IOException("Taille d'instantané invalide : " + size);
+        }
+        List<String> names = new ArrayList<>(size);
+        List<float[]> features = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            names.add(in.readUTF());
+            features.add(ShardProtocol.readVector(in));
+        }
+        faceRecognizer.setGallery(new GalleryFile(names, features));
+        epoch = snapshotEpoch;
+        applied(sequence);
+        snapshotsApplied++;
+        System.out.println("Réplication de la base : instantané de " + size + " visages appliqué (séquence " + sequence + ")");
+    }
+
+    private void applyDelta(byte type, DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long timestampMillis = in.readLong();
+        String name = in.readUTF();
+        float[] feature = type == ReplicationProtocol.ADD ? ShardProtocol.readVector(in) : null;
+        if (sequence != lastApplied + 1) {
+            // Modification manquante : on se reconnecte pour reprendre à la dernière séquence appliquée
+            throw new IOException("Séquence " + sequence + " reçue, " + (lastApplied + 1) + " attendue");
+        }
+        if (feature != null) {
+            if (!faceRecognizer.addFeature(name, feature)) {
+                throw new IOException("Modification " + sequence + " inapplicable");
+            }
+        } else {
+            faceRecognizer.removeIdentity(name);
+        }
+        long propagation = Math.max(0, System.currentTimeMillis() - timestampMillis);
+        propagationMillisTotal += propagation;
+        propagationMillisMax = Math.max(propagationMillisMax, propagation);
+        deltasApplied++;
+        applied(sequence);
+    }
+
+    private void applied(long sequence) {
+        lastApplied = sequence;
+        primarySequence = Math.max(primarySequence, sequence);
+        LongConsumer listener = applyListener;
+        if (listener != null) {
+            listener.accept(sequence);
+        }
+    }
+
+    /**
+     * @return Dernière séquence appliquée, ou -1 avant le premier instantané
+     */
+    public long getLastApplied() {
+        return lastApplied;
+    }
+
+    /**
+     * @return Nombre de modifications connues du primaire et pas encore appliquées
+     */
+    public long getLag() {
+        return Math.max(0, primarySequence - lastApplied);
+    }
+
+    public String getStatistics() {
+        return String.format("séquence: %d, retard: %d, modifications appliquées: %d, instantanés: %d, "
+                        + "reconnexions: %d, propagation moyenne: %.1f ms (max %d ms)",
+                lastApplied, getLag(), deltasApplied, snapshotsApplied, reconnections,
+                deltasApplied == 0 ? 0 : (double) propagationMillisTotal / deltasApplied, propagationMillisMax);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // Connexion abandonnée
+            }
+        }
+        thread.interrupt();
+    }
+}
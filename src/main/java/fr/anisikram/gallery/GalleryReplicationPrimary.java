@@ -0,0 +1,286 @@
+package fr.anisikram.gallery;
+
+import fr.anisikram.faces.FaceRecognizer;
+import fr.anisikram.faces.GalleryListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Nœud primaire de la réplication de la base : chaque modification de la base du reconnaisseur
+ * (ajout ou retrait) reçoit un numéro de séquence, est conservée dans un tampon circulaire et
+ * diffusée aux réplicas connectés. Un réplica qui se connecte reçoit les modifications qui lui
+ * manquent, ou un instantané de la base s'il est trop en retard pour le tampon. Un remplacement
+ * complet de la base (chargement, compactage) vide le tampon : les réplicas repartent alors d'un
+ * instantané.
+ * <p>
+ * Chaque réplica est servi par son propre thread virtuel ; la diffusion ne ralentit donc jamais
+ * l'enregistrement d'un visage, qui se contente d'ajouter une entrée au tampon. L'attente des
+ * modifications passe par un {@link ReentrantLock}, qui ne bloque pas le thread porteur.
+ */
+public class GalleryReplicationPrimary implements GalleryListener, AutoCloseable {
+
+    private record Delta(long sequence, long timestampMillis, byte type, String name, float[] feature) {
+    }
+
+    /**
+     * Ce qu'un réplica doit recevoir : un instantané, des modifications, ou rien (message de vie).
+     */
+    private record Batch(long sequence, List<String> names, List<float[]> features, List<Delta> deltas) {
+    }
+
+    private final FaceRecognizer faceRecognizer;
+    private final int ringCapacity;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+
+    // Copie de la base du primaire à la dernière séquence, source des instantanés (protégée par lock)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final List<String> names = new ArrayList<>();
+    private final List<float[]> features = new ArrayList<>();
+    private final ArrayDeque<Delta> ring;
+    private long sequence;
+    private volatile boolean closed;
+
+    // Statistiques
+    private final AtomicInteger connectedReplicas = new AtomicInteger();
+    private final AtomicLong deltasSent = new AtomicLong();
+    private final AtomicLong snapshotsSent = new AtomicLong();
+
+    /**
+     * @param faceRecognizer Reconnaisseur dont la base est répliquée
+     * @param port Port d'écoute local (0 = port libre)
+     * @param ringCapacity Nombre de modifications conservées pour les réplicas en retard
+     */
+    public GalleryReplicationPrimary(FaceRecognizer faceRecognizer, int port, int ringCapacity) throws IOException {
+        this.faceRecognizer = faceRecognizer;
+        this.ringCapacity = Math.max(1, ringCapacity);
+        this.ring = new ArrayDeque<>(this.ringCapacity);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public GalleryReplicationPrimary(FaceRecognizer faceRecognizer, int port) throws IOException {
+        this(faceRecognizer, port, 1024);
+    }
+
+    /**
+     * Commence à suivre la base du reconnaisseur et à accepter les réplicas.
+     */
+    public void start() {
+        faceRecognizer.setGalleryListener(this);
+        Thread thread = new Thread(this::acceptLoop, "gallery-primary");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Réplication de la base : primaire en écoute sur le port " + getPort());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void onReplace(GalleryFile gallery) {
+        lock.lock();
+        try {
+            names.clear();
+            features.clear();
+            names.addAll(gallery.names());
+            features.addAll(gallery.features());
+            // Les modifications antérieures ne s'appliquent plus à la nouvelle base
+            ring.clear();
+            sequence++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onAdd(String name, float[] feature) {
+        float[] copy = feature.clone();
+        lock.lock();
+        try {
+            names.add(name);
+            features.add(copy);
+            append(ReplicationProtocol.ADD, name, copy);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onRemove(String name) {
+        lock.lock();
+        try {
+            for (int i = names.size() - 1; i >= 0; i--) {
+                if (names.get(i).equals(name)) {
+                    names.remove(i);
+                    features.remove(i);
+                }
+            }
+            append(ReplicationProtocol.REMOVE, name, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ajoute une modification au tampon ; appelé avec {@code lock} tenu.
+     */
+    private void append(byte type, String name, float[] feature) {
+        if (ring.size() == ringCapacity) {
+            ring.removeFirst();
+        }
+        ring.addLast(new Delta(++sequence, System.currentTimeMillis(), type, name, feature));
+        changed.signalAll();
+    }
+
+    /**
+     * Attend les modifications à partir de {@code next} (au plus un intervalle de message de vie).
+     */
+    private Batch awaitChanges(long next) throws InterruptedException {
+        lock.lock();
+        try {
+            if (next > sequence && !closed) {
+                changed.await(ReplicationProtocol.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+            if (next > sequence) {
+                return new Batch(sequence, null, null, List.of());
+            }
+            long oldest = sequence - ring.size() + 1;
+            if (next < oldest) {
+                // Trop en retard pour le tampon : instantané de la base à la séquence courante
+                return new Batch(sequence, List.copyOf(names), List.copyOf(features), null);
+            }
+            List<Delta> deltas = new ArrayList<>((int) (sequence - next + 1));
+            for (Delta delta : ring) {
+                if (delta.sequence() >= next) {
+                    deltas.add(delta);
+                }
+            }
+            return new Batch(sequence, null, null, deltas);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Erreur lors de l'acceptation d'un réplica: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        connectedReplicas.incrementAndGet();
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            if (in.readByte() != ReplicationProtocol.HELLO) {
+                throw new IOException("Message d'ouverture attendu");
+            }
+            long replicaEpoch = in.readLong();
+            long lastApplied = in.readLong();
+            // Un réplica d'une autre exécution du primaire repart d'un instantané
+            long next = replicaEpoch == epoch ? lastApplied + 1 : 0;
+
+            while (!closed) {
+                Batch batch = awaitChanges(next);
+                if (batch.names() != null) {
+                    out.writeByte(ReplicationProtocol.SNAPSHOT);
+                    out.writeLong(epoch);
+                    out.writeLong(batch.sequence());
+                    out.writeInt(batch.names().size());
+                    for (int i = 0; i < batch.names().size(); i++) {
+                        out.writeUTF(batch.names().get(i));
+                        ShardProtocol.writeVector(out, batch.features().get(i));
+                    }
+                    next = batch.sequence() + 1;
+                    snapshotsSent.incrementAndGet();
+                } else if (batch.deltas().isEmpty()) {
+                    out.writeByte(ReplicationProtocol.HEARTBEAT);
+                    out.writeLong(batch.sequence());
+                } else {
+                    for (Delta delta : batch.deltas()) {
+                        out.writeByte(delta.type());
+                        out.writeLong(delta.sequence());
+                        out.writeLong(delta.timestampMillis());
+                        out.writeUTF(delta.name());
+                        if (delta.type() == ReplicationProtocol.ADD) {
+                            ShardProtocol.writeVector(out, delta.feature());
+                        }
+                        next = delta.sequence() + 1;
+                    }
+                    deltasSent.addAndGet(batch.deltas().size());
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Réplica déconnecté (" + socket.getRemoteSocketAddress() + "): " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connectedReplicas.decrementAndGet();
+        }
+    }
+
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getConnectedReplicas() {
+        return connectedReplicas.get();
+    }
+
+    public String getStatistics() {
+        return String.format("séquence: %d, réplicas connectés: %d, modifications envoyées: %d, instantanés envoyés: %d",
+                getSequence(), getConnectedReplicas(), deltasSent.get(), snapshotsSent.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        faceRecognizer.setGalleryListener(null);
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,36 @@
+package fr.anisikram.gallery;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Partition d'une galerie de visages. Une identité appartient à une seule partition.
+ */
+public interface GalleryShard extends AutoCloseable {
+
+    /**
+     * Ajoute un vecteur de caractéristiques à la partition.
+     *
+     * @param name Nom de la personne
+     * @param feature Vecteur de caractéristiques (non normalisé)
+     */
+    void add(String name, float[] feature) throws IOException;
+
+    /**
+     * Recherche les identités les plus proches d'une requête.
+     *
+     * @param query Vecteur de caractéristiques de la requête
+     * @param k Nombre maximal d'identités renvoyées
+     * @return Les meilleures correspondances, une par identité, par score décroissant
+     */
+    List<GalleryMatch> search(float[] query, int k) throws IOException;
+
+    /**
+     * @return Nombre de vecteurs stockés dans la partition
+     */
+    int size() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
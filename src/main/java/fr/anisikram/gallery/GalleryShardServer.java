@@ -0,0 +1,119 @@
+package fr.anisikram.gallery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Processus hébergeant une partition de galerie et la servant sur une socket TCP locale.
+ * Chaque connexion est traitée sur un thread virtuel.
+ *
+ * <pre>
+ * java fr.anisikram.gallery.GalleryShardServer &lt;port&gt;
+ * </pre>
+ */
+public class GalleryShardServer implements AutoCloseable {
+
+    private final GalleryShard shard;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public GalleryShardServer(GalleryShard shard, int port) throws IOException {
+        this.shard = shard;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepte les connexions jusqu'à la fermeture du serveur.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.submit(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Erreur lors de l'acceptation d'une connexion: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    switch (op) {
+                        case ShardProtocol.ADD -> {
+                            String name = in.readUTF();
+                            float[] feature = ShardProtocol.readVector(in);
+                            shard.add(name, feature);
+                            out.writeByte(ShardProtocol.OK);
+                        }
+                        case ShardProtocol.SEARCH -> {
+                            int k = in.readInt();
+                            float[] query = ShardProtocol.readVector(in);
+                            List<GalleryMatch> matches = shard.search(query, k);
+                            out.writeByte(ShardProtocol.OK);
+                            out.writeInt(matches.size());
+                            for (GalleryMatch match : matches) {
+                                out.writeUTF(match.name());
+                                out.writeDouble(match.score());
+                            }
+                        }
+                        case ShardProtocol.SIZE -> {
+                            int size = shard.size();
+                            out.writeByte(ShardProtocol.OK);
+                            out.writeInt(size);
+                        }
+                        default -> throw new IOException("Opération inconnue : " + op);
+                    }
+                } catch (IllegalArgumentException e) {
+                    out.writeByte(ShardProtocol.ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Connexion de partition interrompue: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (GalleryShardServer server = new GalleryShardServer(new LocalGalleryShard(), port)) {
+            // Le port effectif est annoncé sur la sortie standard pour le processus parent
+            System.out.println("SHARD_PORT " + server.getPort());
+            System.out.flush();
+            server.serve();
+        }
+    }
+}
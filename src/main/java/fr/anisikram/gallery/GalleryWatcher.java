@@ -0,0 +1,140 @@
+package fr.anisikram.gallery;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Surveille les fichiers d'une base de visages et la recharge lorsqu'ils sont remplacés.
+ * La nouvelle base est lue et validée sur le thread du surveillant, puis transmise au
+ * consommateur ; une base illisible ou invalide est ignorée et la base courante reste en place.
+ */
+public class GalleryWatcher implements AutoCloseable {
+
+    // Délai sans nouvelle modification avant de relire les fichiers (les deux fichiers sont remplacés l'un après l'autre)
+    private static final long QUIET_PERIOD_MS = 300;
+
+    // Relectures tentées quand la paire de fichiers est lue entre ses deux renommages
+    private static final int MISMATCH_RETRIES = 5;
+
+    private final String basePath;
+    private final Path featuresFile;
+    private final Path namesFile;
+    private final Consumer<GalleryFile> onReload;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private volatile long reloads;
+    private volatile long rejected;
+
+    /**
+     * @param basePath Chemin de la base, sans extension
+     * @param onReload Appelé avec chaque nouvelle base valide
+     */
+    public GalleryWatcher(String basePath, Consumer<GalleryFile> onReload) throws IOException {
+        this.basePath = basePath;
+        this.featuresFile = GalleryFile.featuresPath(basePath).toAbsolutePath();
+        this.namesFile = GalleryFile.namesPath(basePath).toAbsolutePath();
+        this.onReload = onReload;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        featuresFile.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "gallery-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+        System.out.println("Surveillance de la base de données '" + basePath + "' activée.");
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+
+                // Regroupement des événements : on attend que les écritures soient terminées
+                while (changed) {
+                    WatchKey next = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    drain(next);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Arrêt de la surveillance
+        }
+    }
+
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            if (file.equals(featuresFile) || file.equals(namesFile)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() throws InterruptedException {
+        try {
+            GalleryFile gallery = readComplete();
+            gallery.validate();
+            onReload.accept(gallery);
+            reloads++;
+            System.out.println("Base de données rechargée : " + gallery.size() + " visages.");
+        } catch (IOException | RuntimeException e) {
+            rejected++;
+            System.err.println("Rechargement ignoré, la base actuelle est conservée : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lit la base en attendant, si besoin, que le second fichier de la paire soit remplacé à son tour.
+     */
+    private GalleryFile readComplete() throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return GalleryFile.read(basePath);
+            } catch (GalleryFile.MismatchedFilesException e) {
+                if (attempt > MISMATCH_RETRIES) {
+                    throw e;
+                }
+                Thread.sleep(QUIET_PERIOD_MS);
+            }
+        }
+    }
+
+    public long getReloads() {
+        return reloads;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,142 @@
+package fr.anisikram.gallery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Partition de galerie en mémoire. Les vecteurs sont normalisés à l'insertion et rangés dans un
+ * unique tableau contigu, de sorte qu'une recherche se réduit à une suite de produits scalaires.
+ */
+public class LocalGalleryShard implements GalleryShard {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Identités distinctes et indice d'identité de chaque vecteur
+    private final List<String> identities = new ArrayList<>();
+    private final Map<String, Integer> identityIndex = new HashMap<>();
+    private int[] owners = new int[0];
+    private float[] features = new float[0];
+    private int count;
+    private int dimension = -1;
+
+    @Override
+    public void add(String name, float[] feature) {
+        float[] normalized = normalize(feature);
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = normalized.length;
+            } else if (dimension != normalized.length) {
+                throw new IllegalArgumentException("Dimension incompatible : " + normalized.length + " au lieu de " + dimension);
+            }
+            if (count == owners.length) {
+                int capacity = Math.max(16, owners.length * 2);
+                owners = Arrays.copyOf(owners, capacity);
+                features = Arrays.copyOf(features, capacity * dimension);
+            }
+            Integer owner = identityIndex.get(name);
+            if (owner == null) {
+                owner = identities.size();
+                identities.add(name);
+                identityIndex.put(name, owner);
+            }
+            System.arraycopy(normalized, 0, features, count * dimension, dimension);
+            owners[count++] = owner;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GalleryMatch> search(float[] query, int k) {
+        float[] q = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (count == 0) {
+                return List.of();
+            }
+            if (q.length != dimension) {
+                throw new IllegalArgumentException("Dimension incompatible : " + q.length + " au lieu de " + dimension);
+            }
+
+            // Meilleur score de chaque identité
+            float[] best = new float[identities.size()];
+            Arrays.fill(best, Float.NEGATIVE_INFINITY);
+            for (int i = 0; i < count; i++) {
+                int offset = i * dimension;
+                float dot = 0;
+                for (int j = 0; j < dimension; j++) {
+                    dot += q[j] * features[offset + j];
+                }
+                if (dot > best[owners[i]]) {
+                    best[owners[i]] = dot;
+                }
+            }
+            return topK(best, identities, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sélectionne les {@code k} meilleurs scores par insertion dans un petit tableau trié.
+     */
+    private static List<GalleryMatch> topK(float[] scores, List<String> names, int k) {
+        int limit = Math.min(k, scores.length);
+        if (limit <= 0) {
+            return List.of();
+        }
+        int[] top = new int[limit];
+        int size = 0;
+        for (int i = 0; i < scores.length; i++) {
+            if (size == limit && scores[i] <= scores[top[size - 1]]) {
+                continue;
+            }
+            int position = size < limit ? size++ : size - 1;
+            while (position > 0 && scores[top[position - 1]] < scores[i]) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = i;
+        }
+        List<GalleryMatch> matches = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            matches.add(new GalleryMatch(names.get(top[i]), scores[top[i]]));
+        }
+        return matches;
+    }
+
+    /**
+     * Normalise un vecteur (norme L2) pour que le produit scalaire soit la similarité cosinus.
+     */
+    public static float[] normalize(float[] feature) {
+        double norm = 0;
+        for (float v : feature) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[feature.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < feature.length; i++) {
+            normalized[i] = (float) (feature[i] / norm);
+        }
+        return normalized;
+    }
+}
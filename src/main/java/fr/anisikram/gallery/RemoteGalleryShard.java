@@ -0,0 +1,125 @@
+package fr.anisikram.gallery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Client d'une partition hébergée par un {@link GalleryShardServer}. Les connexions sont
+ * mises en commun pour permettre plusieurs requêtes simultanées vers la même partition.
+ */
+public class RemoteGalleryShard implements GalleryShard {
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+
+    private final InetSocketAddress address;
+    private final BlockingQueue<Connection> idle;
+
+    public RemoteGalleryShard(InetSocketAddress address, int maxIdleConnections) {
+        this.address = address;
+        this.idle = new ArrayBlockingQueue<>(maxIdleConnections);
+    }
+
+    public RemoteGalleryShard(String host, int port) {
+        this(new InetSocketAddress(host, port), 8);
+    }
+
+    private record Connection(Socket socket, DataInputStream in, DataOutputStream out) {
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Connexion abandonnée
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T exchange(DataInputStream in, DataOutputStream out) throws IOException;
+    }
+
+    private <T> T call(Call<T> call) throws IOException {
+        Connection connection = idle.poll();
+        if (connection == null) {
+            Socket socket = new Socket();
+            socket.connect(address, CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            connection = new Connection(socket,
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                    new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+        }
+        try {
+            T result = call.exchange(connection.in(), connection.out());
+            if (!idle.offer(connection)) {
+                connection.close();
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            // L'état du flux est inconnu : la connexion n'est pas réutilisée
+            connection.close();
+            throw e;
+        }
+    }
+
+    private static void checkStatus(DataInputStream in) throws IOException {
+        if (in.readByte() != ShardProtocol.OK) {
+            throw new IllegalArgumentException(in.readUTF());
+        }
+    }
+
+    @Override
+    public void add(String name, float[] feature) throws IOException {
+        call((in, out) -> {
+            out.writeByte(ShardProtocol.ADD);
+            out.writeUTF(name);
+            ShardProtocol.writeVector(out, feature);
+            out.flush();
+            checkStatus(in);
+            return null;
+        });
+    }
+
+    @Override
+    public List<GalleryMatch> search(float[] query, int k) throws IOException {
+        return call((in, out) -> {
+            out.writeByte(ShardProtocol.SEARCH);
+            out.writeInt(k);
+            ShardProtocol.writeVector(out, query);
+            out.flush();
+            checkStatus(in);
+            int count = in.readInt();
+            List<GalleryMatch> matches = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                matches.add(new GalleryMatch(in.readUTF(), in.readDouble()));
+            }
+            return matches;
+        });
+    }
+
+    @Override
+    public int size() throws IOException {
+        return call((in, out) -> {
+            out.writeByte(ShardProtocol.SIZE);
+            out.flush();
+            checkStatus(in);
+            return in.readInt();
+        });
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+}
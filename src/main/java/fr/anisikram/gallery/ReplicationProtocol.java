@@ -0,0 +1,38 @@
+package fr.anisikram.gallery;
+
+/**
+ * Protocole binaire entre {@link GalleryReplica} et {@link GalleryReplicationPrimary}.
+ * Le réplica ouvre la connexion par un message unique, puis le primaire lui envoie un flux continu
+ * de messages, chacun commençant par un octet de type.
+ *
+ * <pre>
+ * HELLO     (réplica)  : époque (long), dernière séquence appliquée (long, -1 si aucune)
+ * SNAPSHOT  (primaire) : époque (long), séquence (long), n (int), n x (nom (UTF), vecteur)
+ * ADD       (primaire) : séquence (long), horodatage (long, ms), nom (UTF), vecteur
+ * REMOVE    (primaire) : séquence (long), horodatage (long, ms), nom (UTF)
+ * HEARTBEAT (primaire) : séquence courante du primaire (long)
+ * </pre>
+ * Chaque modification de la base du primaire reçoit le numéro de séquence suivant. L'époque
+ * identifie une exécution du primaire : un réplica dont l'époque diffère repart d'un instantané.
+ * Les vecteurs sont transmis comme dans {@link ShardProtocol}.
+ */
+final class ReplicationProtocol {
+
+    static final byte HELLO = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte ADD = 3;
+    static final byte REMOVE = 4;
+    static final byte HEARTBEAT = 5;
+
+    // Intervalle des messages de vie envoyés en l'absence de modification
+    static final int HEARTBEAT_INTERVAL_MS = 1000;
+
+    // Silence au-delà duquel le réplica considère la connexion comme perdue
+    static final int READ_TIMEOUT_MS = 3 * HEARTBEAT_INTERVAL_MS;
+
+    // Borne de sécurité sur la taille d'instantané annoncée par le primaire
+    static final int MAX_SNAPSHOT_SIZE = 10_000_000;
+
+    private ReplicationProtocol() {
+    }
+}
@@ -0,0 +1,52 @@
+package fr.anisikram.gallery;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Protocole binaire entre {@link RemoteGalleryShard} et {@link GalleryShardServer}.
+ * Chaque requête commence par un octet d'opération ; chaque réponse par {@link #OK} ou
+ * {@link #ERROR} suivi d'un message.
+ *
+ * <pre>
+ * ADD    : nom (UTF), vecteur          -> OK
+ * SEARCH : k (int), vecteur            -> OK, n (int), n x (nom (UTF), score (double))
+ * SIZE   :                             -> OK, taille (int)
+ * </pre>
+ * Un vecteur est transmis sous la forme de sa dimension (int) suivie de ses valeurs (float).
+ */
+final class ShardProtocol {
+
+    static final byte ADD = 1;
+    static final byte SEARCH = 2;
+    static final byte SIZE = 3;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // Borne de sécurité sur la dimension annoncée par le pair
+    private static final int MAX_DIMENSION = 4096;
+
+    private ShardProtocol() {
+    }
+
+    static void writeVector(DataOutputStream out, float[] vector) throws IOException {
+        out.writeInt(vector.length);
+        for (float v : vector) {
+            out.writeFloat(v);
+        }
+    }
+
+    static float[] readVector(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_DIMENSION) {
+            throw new IOException("Dimension de vecteur invalide : " + length);
+        }
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = in.readFloat();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,132 @@
+package fr.anisikram.gallery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Galerie répartie sur plusieurs partitions. Chaque identité est attribuée à une partition par
+ * hachage de son nom ; une recherche est envoyée à toutes les partitions en parallèle, puis les
+ * meilleurs résultats sont fusionnés. Une partition qui ne répond pas dans le délai imparti est
+ * ignorée pour cette requête.
+ */
+public class ShardedGallery implements AutoCloseable {
+
+    private final List<GalleryShard> shards;
+    private final long shardTimeoutMillis;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong shardTimeouts = new AtomicLong();
+    private final AtomicLong shardFailures = new AtomicLong();
+
+    /**
+     * @param shards Partitions (l'ordre détermine l'attribution des identités et doit rester stable)
+     * @param shardTimeoutMillis Délai maximal accordé à chaque partition pour une recherche
+     */
+    public ShardedGallery(List<GalleryShard> shards, long shardTimeoutMillis) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Au moins une partition est nécessaire");
+        }
+        this.shards = List.copyOf(shards);
+        this.shardTimeoutMillis = shardTimeoutMillis;
+    }
+
+    /**
+     * @return L'indice de la partition propriétaire d'une identité
+     */
+    public int ownerOf(String name) {
+        return Math.floorMod(name.hashCode(), shards.size());
+    }
+
+    /**
+     * Ajoute un vecteur à la partition propriétaire de l'identité.
+     */
+    public void add(String name, float[] feature) throws IOException {
+        shards.get(ownerOf(name)).add(name, feature);
+    }
+
+    /**
+     * Recherche les {@code k} identités les plus proches sur toutes les partitions.
+     *
+     * @param query Vecteur de caractéristiques de la requête
+     * @param k Nombre maximal d'identités renvoyées
+     * @return Les meilleures correspondances, par score décroissant (éventuellement partielles)
+     */
+    public List<GalleryMatch> search(float[] query, int k) {
+        searches.incrementAndGet();
+        List<Future<List<GalleryMatch>>> pending = new ArrayList<>(shards.size());
+        for (GalleryShard shard : shards) {
+            pending.add(executor.submit(() -> shard.search(query, k)));
+        }
+
+        // Toutes les partitions partagent la même échéance
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shardTimeoutMillis);
+        List<GalleryMatch> merged = new ArrayList<>(k * shards.size());
+        for (Future<List<GalleryMatch>> future : pending) {
+            try {
+                merged.addAll(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                shardTimeouts.incrementAndGet();
+                future.cancel(true);
+            } catch (ExecutionException e) {
+                shardFailures.incrementAndGet();
+                System.err.println("Erreur de recherche sur une partition: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Une identité n'appartient qu'à une partition : un simple tri suffit à la fusion
+        merged.sort(Comparator.comparingDouble(GalleryMatch::score).reversed());
+        return merged.size() > k ? List.copyOf(merged.subList(0, k)) : merged;
+    }
+
+    /**
+     * @return Nombre total de vecteurs, toutes partitions confondues
+     */
+    public int size() throws IOException {
+        int total = 0;
+        for (GalleryShard shard : shards) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public long getSearches() {
+        return searches.get();
+    }
+
+    public long getShardTimeouts() {
+        return shardTimeouts.get();
+    }
+
+    public long getShardFailures() {
+        return shardFailures.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (GalleryShard shard : shards) {
+            try {
+                shard.close();
+            } catch (Exception e) {
+                System.err.println("Erreur lors de la fermeture d'une partition: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package fr.anisikram.memory;
+
+import org.opencv.core.Mat;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Comptabilité de la mémoire native des {@link Mat} OpenCV, par site d'allocation.
+ * <p>
+ * Les méthodes qui rendent une nouvelle matrice à leur appelant l'enregistrent avec
+ * {@link #track(Mat, String)} ; l'appelant la libère avec {@link #release(Mat)}.
+ * Les octets vivants sont recalculés à chaque lecture à partir de la taille courante des matrices
+ * suivies ; seules comptent les matrices propriétaires de leurs données (une sous-matrice, ou une
+ * seconde matrice sur le même tampon, ne compte qu'une fois le tampon). Une matrice suivie récupérée par le ramasse-miettes sans être passée par
+ * {@link #release(Mat)} est comptée comme fuite : sa mémoire native ne revient qu'au passage du
+ * finaliseur, ce qui fait grossir le processus sans que le tas Java ne grossisse.
+ * <p>
+ * Le suivi est désactivé par défaut et ne coûte alors qu'un test. Il s'active avec
+ * {@code -Dopencv.mat.tracking=true}, ou {@code -Dopencv.mat.leakReport=true} qui affiche en plus
+ * un rapport des fuites à l'arrêt du processus, ou par programme avec {@link #setEnabled(boolean)}.
+ */
+public final class MatTracker {
+
+    /**
+     * Bilan d'un site d'allocation.
+     *
+     * @param site Site d'allocation
+     * @param allocated Matrices enregistrées
+     * @param released Matrices libérées
+     * @param leaked Matrices récupérées par le ramasse-miettes sans avoir été libérées
+     * @param live Matrices encore vivantes
+     * @param liveBytes Octets natifs des matrices vivantes
+     */
+    public record SiteStats(String site, long allocated, long released, long leaked, long live, long liveBytes) {
+    }
+
+    private record Entry(WeakReference<Mat> mat, String site) {
+    }
+
+    private static final class Counters {
+        long allocated;
+        long released;
+        long leaked;
+    }
+
+    private static final boolean LEAK_REPORT = Boolean.getBoolean("opencv.mat.leakReport");
+    private static volatile boolean enabled = LEAK_REPORT || Boolean.getBoolean("opencv.mat.tracking");
+
+    // Matrices suivies, indexées par l'adresse de leur en-tête natif (unique tant que la matrice existe)
+    private static final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private static final Map<String, Counters> counters = new TreeMap<>();
+
+    static {
+        if (LEAK_REPORT) {
+            Runtime.getRuntime().addShutdownHook(new Thread(MatTracker::printLeakReport, "mat-leak-report"));
+        }
+    }
+
+    private MatTracker() {
+    }
+
+    /**
+     * Enregistre une matrice dont la propriété est transmise à l'appelant.
+     *
+     * @param mat Matrice à suivre
+     * @param site Site d'allocation, par exemple {@code "FaceDetector.extractFace"}
+     * @return La même matrice
+     */
+    public static <T extends Mat> T track(T mat, String site) {
+        if (!enabled || mat == null) {
+            return mat;
+        }
+        Entry previous = entries.put(mat.getNativeObjAddr(), new Entry(new WeakReference<>(mat), site));
+        synchronized (counters) {
+            counters.computeIfAbsent(site, s -> new Counters()).allocated++;
+            // En-tête natif réutilisé : l'ancienne matrice a été récupérée sans être libérée
+            if (previous != null && previous.mat().get() != mat && !isReleased(previous)) {
+                counters.computeIfAbsent(previous.site(), s -> new Counters()).leaked++;
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Libère une matrice et cesse de la suivre.
+     *
+     * @param mat Matrice à libérer (peut être null)
+     */
+    public static void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        if (enabled) {
+            Entry entry = entries.remove(mat.getNativeObjAddr());
+            if (entry != null) {
+                synchronized (counters) {
+                    counters.computeIfAbsent(entry.site(), s -> new Counters()).released++;
+                }
+            }
+        }
+        mat.release();
+    }
+
+    private static boolean isReleased(Entry entry) {
+        Mat mat = entry.mat().get();
+        return mat != null && mat.dataAddr() == 0;
+    }
+
+    /**
+     * Met à jour les compteurs : les matrices libérées ou récupérées cessent d'être suivies.
+     *
+     * @return Le bilan de chaque site, trié par nom de site
+     */
+    public static List<SiteStats> snapshot() {
+        Map<String, long[]> live = new TreeMap<>();
+        Set<Long> buffers = new HashSet<>();
+        synchronized (counters) {
+            for (Map.Entry<Long, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                Mat mat = entry.mat().get();
+                if (mat == null) {
+                    if (entries.remove(item.getKey(), entry)) {
+                        counters.computeIfAbsent(entry.site(), s -> new Counters()).leaked++;
+                    }
+                } else if (mat.dataAddr() == 0) {
+                    if (entries.remove(item.getKey(), entry)) {
+                        counters.computeIfAbsent(entry.site(), s -> new Counters()).released++;
+                    }
+                } else {
+                    long[] totals = live.computeIfAbsent(entry.site(), s -> new long[2]);
+                    totals[0]++;
+                    if (!mat.isSubmatrix() && buffers.add(mat.dataAddr())) {
+                        totals[1] += mat.total() * mat.elemSize();
+                    }
+                }
+            }
+
+            List<SiteStats> stats = new ArrayList<>(counters.size());
+            for (Map.Entry<String, Counters> item : counters.entrySet()) {
+                Counters c = item.getValue();
+                long[] totals = live.getOrDefault(item.getKey(), new long[2]);
+                stats.add(new SiteStats(item.getKey(), c.allocated, c.released, c.leaked, totals[0], totals[1]));
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * @return Octets natifs des matrices suivies encore vivantes
+     */
+    public static long liveBytes() {
+        long total = 0;
+        for (SiteStats stats : snapshot()) {
+            total += stats.liveBytes();
+        }
+        return total;
+    }
+
+    /**
+     * @return Nombre de matrices suivies encore vivantes
+     */
+    public static long liveCount() {
+        long total = 0;
+        for (SiteStats stats : snapshot()) {
+            total += stats.live();
+        }
+        return total;
+    }
+
+    /**
+     * @return Nombre total de matrices récupérées sans avoir été libérées
+     */
+    public static long leakedCount() {
+        long total = 0;
+        for (SiteStats stats : snapshot()) {
+            total += stats.leaked();
+        }
+        return total;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Oublie toutes les matrices suivies et remet les compteurs à zéro (entre deux mesures).
+     */
+    public static void reset() {
+        synchronized (counters) {
+            entries.clear();
+            counters.clear();
+        }
+    }
+
+    /**
+     * Affiche le bilan de chaque site d'allocation, les plus gros consommateurs en premier.
+     */
+    public static void printLeakReport() {
+        List<SiteStats> stats = new ArrayList<>(snapshot());
+        stats.sort((a, b) -> Long.compare(b.liveBytes(), a.liveBytes()));
+        System.out.println("=== Mémoire native des matrices OpenCV ===");
+        if (stats.isEmpty()) {
+            System.out.println("Aucune matrice suivie.");
+            return;
+        }
+        System.out.printf("%-40s %10s %10s %10s %10s %14s%n", "Site", "allouées", "libérées", "fuites", "vivantes", "octets vivants");
+        for (SiteStats s : stats) {
+            System.out.printf("%-40s %10d %10d %10d %10d %14d%n",
+                    s.site(), s.allocated(), s.released(), s.leaked(), s.live(), s.liveBytes());
+        }
+    }
+}
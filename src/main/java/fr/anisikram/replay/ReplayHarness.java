@@ -0,0 +1,338 @@
+package fr.anisikram.replay;
+
+import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceQualityScorer;
+import fr.anisikram.faces.FaceRecognizer;
+import fr.anisikram.faces.RecognitionResult;
+import fr.anisikram.memory.MatTracker;
+import fr.anisikram.video.ReplayFrameSource;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Rejoue un enregistrement ({@link fr.anisikram.video.FrameRecorder}) à travers toute la chaîne
+ * détection, alignement, extraction et reconnaissance, puis produit un rapport : cadence, percentiles
+ * par étape et reconnaissances. Le rapport peut être enregistré comme référence et comparé à une
+ * référence existante ; le programme se termine en erreur en cas de régression.
+ *
+ * <pre>
+ * java fr.anisikram.replay.ReplayHarness &lt;enregistrement&gt; [--gallery base] [--model chemin.onnx]
+ *      [--realtime] [--quality 0.3] [--baseline reference.properties] [--save-baseline reference.properties]
+ *      [--tolerance 0.10]
+ * </pre>
+ * Avec {@code -Dopencv.mat.tracking=true}, le rapport contient aussi les matrices OpenCV restées
+ * vivantes ou perdues sans libération : un long rejeu vérifie ainsi que la mémoire native reste stable.
+ */
+public class ReplayHarness {
+
+    private static final String DEFAULT_MODEL = "models/face_recognition_sface_2021dec.onnx";
+
+    private static final String[] STAGES = {"detection", "alignement", "extraction", "reconnaissance", "image"};
+
+    // Écart de latence en deçà duquel une variation n'est pas considérée comme une régression (ms)
+    private static final double LATENCY_NOISE_MILLIS = 0.1;
+
+    // Mesure affichée mais jamais comptée comme régression : une fuite n'est constatée qu'une fois
+    // la matrice récupérée par le ramasse-miettes, à un moment qui varie d'une exécution à l'autre
+    private static final String LEAKED_MATS = "memory.mats.leaked";
+
+    private final FaceDetector faceDetector;
+    private final FaceRecognizer faceRecognizer;
+    private final FaceQualityScorer qualityScorer;
+
+    private final Map<String, long[]> timings = new LinkedHashMap<>();
+    private int samples;
+    private long faces;
+    private long unknown;
+    private long lowQuality;
+    private final Map<String, Long> recognitions = new TreeMap<>();
+
+    /**
+     * @param faceDetector Détecteur de visages
+     * @param faceRecognizer Reconnaisseur (base déjà chargée)
+     * @param qualityScorer Filtre de qualité appliqué avant l'extraction (null = aucun)
+     */
+    public ReplayHarness(FaceDetector faceDetector, FaceRecognizer faceRecognizer, FaceQualityScorer qualityScorer) {
+        this.faceDetector = faceDetector;
+        this.faceRecognizer = faceRecognizer;
+        this.qualityScorer = qualityScorer;
+        for (String stage : STAGES) {
+            timings.put(stage, new long[1024]);
+        }
+    }
+
+    /**
+     * Traite toutes les images de la source et renvoie le rapport de l'exécution.
+     */
+    public Properties run(ReplayFrameSource source) {
+        long start = System.nanoTime();
+        Mat frame;
+        while ((frame = source.getFrame()) != null) {
+            long t0 = System.nanoTime();
+            List<Rect> detected = faceDetector.detectFaces(frame);
+            long t1 = System.nanoTime();
+
+            List<Mat> crops = new ArrayList<>(detected.size());
+            for (Rect face : detected) {
+                if (qualityScorer != null && !qualityScorer.accept(frame, face)) {
+                    lowQuality++;
+                    continue;
+                }
+                crops.add(FaceDetector.extractFace(frame, face, true));
+            }
+            long t2 = System.nanoTime();
+
+            List<float[]> features = new ArrayList<>(crops.size());
+            for (Mat crop : crops) {
+                float[] feature = crop.empty() ? null : faceRecognizer.extractFeature(crop);
+                if (feature != null) {
+                    features.add(feature);
+                }
+                MatTracker.release(crop);
+            }
+            long t3 = System.nanoTime();
+
+            List<RecognitionResult> results = faceRecognizer.matchFeatures(features);
+            long t4 = System.nanoTime();
+
+            record(t1 - t0, t2 - t1, t3 - t2, t4 - t3, t4 - t0);
+            faces += detected.size();
+            for (RecognitionResult result : results) {
+                if (result.isKnown()) {
+                    recognitions.merge(result.name(), 1L, Long::sum);
+                } else {
+                    unknown++;
+                }
+            }
+            MatTracker.release(frame);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Properties report = new Properties();
+        report.setProperty("frames", Integer.toString(samples));
+        report.setProperty("faces", Long.toString(faces));
+        report.setProperty("fps", format(samples / seconds));
+        for (Map.Entry<String, long[]> entry : timings.entrySet()) {
+            long[] sorted = Arrays.copyOf(entry.getValue(), samples);
+            Arrays.sort(sorted);
+            report.setProperty("stage." + entry.getKey() + ".p50", format(percentile(sorted, 0.50)));
+            report.setProperty("stage." + entry.getKey() + ".p99", format(percentile(sorted, 0.99)));
+        }
+        report.setProperty("recognitions.unknown", Long.toString(unknown));
+        report.setProperty("quality.skipped", Long.toString(lowQuality));
+        if (MatTracker.isEnabled()) {
+            // Après le rejeu, aucune matrice ne doit rester vivante ni avoir échappé à sa libération ;
+            // le ramasse-miettes passe d'abord pour que les matrices perdues soient comptées comme fuites
+            collectGarbage();
+            report.setProperty("memory.mats.live", Long.toString(MatTracker.liveCount()));
+            report.setProperty("memory.bytes.live", Long.toString(MatTracker.liveBytes()));
+            report.setProperty(LEAKED_MATS, Long.toString(MatTracker.leakedCount()));
+        }
+        for (Map.Entry<String, Long> entry : recognitions.entrySet()) {
+            report.setProperty("recognitions.known." + entry.getKey(), Long.toString(entry.getValue()));
+        }
+        return report;
+    }
+
+    /**
+     * Laisse le ramasse-miettes vider les références faibles des matrices abandonnées.
+     */
+    private static void collectGarbage() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void record(long... stageNanos) {
+        int index = 0;
+        for (Map.Entry<String, long[]> entry : timings.entrySet()) {
+            long[] values = entry.getValue();
+            if (samples == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+                entry.setValue(values);
+            }
+            values[samples] = stageNanos[index++];
+        }
+        samples++;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Affiche le rapport d'une exécution.
+     */
+    public static void print(Properties report) {
+        System.out.println("=== Rejeu ===");
+        System.out.println("Images            : " + report.getProperty("frames"));
+        System.out.println("Visages détectés  : " + report.getProperty("faces"));
+        System.out.println("Cadence           : " + report.getProperty("fps") + " images/s");
+        for (String stage : STAGES) {
+            System.out.printf(Locale.ROOT, "%-22s: p50 %s ms, p99 %s ms%n", "Étape " + stage,
+                    report.getProperty("stage." + stage + ".p50"), report.getProperty("stage." + stage + ".p99"));
+        }
+        long detectedFaces = Long.parseLong(report.getProperty("faces"));
+        long skipped = Long.parseLong(report.getProperty("quality.skipped", "0"));
+        System.out.printf(Locale.ROOT, "Extractions évitées : %d (%.1f %%)%n", skipped,
+                detectedFaces == 0 ? 0 : 100.0 * skipped / detectedFaces);
+        System.out.println("Visages inconnus  : " + report.getProperty("recognitions.unknown"));
+        if (report.getProperty("memory.mats.live") != null) {
+            System.out.println("Matrices vivantes : " + report.getProperty("memory.mats.live")
+                    + " (" + report.getProperty("memory.bytes.live") + " octets), fuites : "
+                    + report.getProperty(LEAKED_MATS));
+        }
+        for (String key : new TreeSet<>(report.stringPropertyNames())) {
+            if (key.startsWith("recognitions.known.")) {
+                System.out.println("  " + key.substring("recognitions.known.".length()) + " : " + report.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * Compare un rapport à une référence et affiche les écarts.
+     * La cadence ne doit pas baisser et les latences ne doivent pas augmenter au-delà de la tolérance ;
+     * les compteurs (images, visages, reconnaissances) doivent être identiques, le rejeu étant déterministe.
+     * Une clé présente d'un seul côté est un écart à part entière (et non une valeur nulle), sauf pour
+     * les mesures mémoire, qui n'existent que si le suivi des matrices était actif et ne sont comparées
+     * que lorsque les deux rapports les contiennent. Le nombre de fuites dépend du passage du
+     * ramasse-miettes : il est affiché à titre indicatif, sans jamais compter comme régression.
+     *
+     * @return Le nombre de régressions
+     */
+    public static int compare(Properties baseline, Properties current, double tolerance) {
+        System.out.println("=== Comparaison avec la référence (tolérance " + Math.round(tolerance * 100) + " %) ===");
+        TreeSet<String> keys = new TreeSet<>(baseline.stringPropertyNames());
+        keys.addAll(current.stringPropertyNames());
+        int regressions = 0;
+        int skipped = 0;
+        for (String key : keys) {
+            String before = baseline.getProperty(key);
+            String after = current.getProperty(key);
+            if (before == null || after == null) {
+                if (key.startsWith("memory.")) {
+                    skipped++;
+                    continue;
+                }
+                System.out.printf(Locale.ROOT, "%-36s %12s -> %-12s %9s  RÉGRESSION%n", key,
+                        before == null ? "(absente)" : before, after == null ? "(absente)" : after, "");
+                regressions++;
+                continue;
+            }
+            double b = Double.parseDouble(before);
+            double a = Double.parseDouble(after);
+
+            boolean regression;
+            if (key.equals(LEAKED_MATS)) {
+                regression = false;
+            } else if (key.equals("fps")) {
+                regression = a < b * (1 - tolerance);
+            } else if (key.startsWith("stage.")) {
+                regression = a > b * (1 + tolerance) && a - b > LATENCY_NOISE_MILLIS;
+            } else {
+                regression = a != b;
+            }
+            String change = b == 0 ? "" : String.format(Locale.ROOT, "%+.1f %%", 100 * (a - b) / b);
+            String flag = regression ? "  RÉGRESSION" : key.equals(LEAKED_MATS) && a != b ? "  (indicatif)" : "";
+            System.out.printf(Locale.ROOT, "%-36s %12s -> %-12s %9s%s%n", key, before, after, change, flag);
+            if (regression) {
+                regressions++;
+            }
+        }
+        if (skipped > 0) {
+            System.out.println(skipped + " mesure(s) mémoire ignorée(s) : suivi des matrices actif dans un seul des rapports.");
+        }
+        System.out.println(regressions == 0 ? "Aucune régression." : regressions + " régression(s).");
+        return regressions;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage : ReplayHarness <enregistrement> [--gallery base] [--model chemin.onnx] [--realtime] "
+                    + "[--quality 0.3] [--baseline reference.properties] [--save-baseline reference.properties] [--tolerance 0.10]");
+            System.exit(1);
+        }
+        Path recording = Path.of(args[0]);
+        String gallery = null;
+        String modelPath = DEFAULT_MODEL;
+        boolean realtime = false;
+        Path baselineFile = null;
+        Path saveBaselineFile = null;
+        double tolerance = 0.10;
+        double qualityThreshold = 0;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--gallery" -> gallery = args[++i];
+                case "--model" -> modelPath = args[++i];
+                case "--realtime" -> realtime = true;
+                case "--baseline" -> baselineFile = Path.of(args[++i]);
+                case "--save-baseline" -> saveBaselineFile = Path.of(args[++i]);
+                case "--tolerance" -> tolerance = Double.parseDouble(args[++i]);
+                case "--quality" -> qualityThreshold = Double.parseDouble(args[++i]);
+                default -> {
+                    System.out.println("Option inconnue : " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        OpenCV.loadLocally();
+        FaceRecognizer faceRecognizer = new FaceRecognizer(modelPath);
+        if (gallery != null && !faceRecognizer.loadDatabase(gallery)) {
+            System.exit(1);
+        }
+        ReplayHarness harness = new ReplayHarness(new FaceDetector(), faceRecognizer,
+                qualityThreshold > 0 ? new FaceQualityScorer(qualityThreshold) : null);
+        ReplayFrameSource source = new ReplayFrameSource(recording, realtime);
+        Properties report = harness.run(source);
+        source.close();
+        faceRecognizer.release();
+        print(report);
+
+        if (saveBaselineFile != null) {
+            try (Writer writer = Files.newBufferedWriter(saveBaselineFile)) {
+                report.store(writer, "Référence de rejeu : " + recording.getFileName());
+            }
+            System.out.println("Référence enregistrée dans '" + saveBaselineFile + "'.");
+        }
+        if (baselineFile != null) {
+            Properties baseline = new Properties();
+            try (Reader reader = Files.newBufferedReader(baselineFile)) {
+                baseline.load(reader);
+            }
+            if (compare(baseline, report, tolerance) > 0) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package fr.anisikram.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Regroupe des requêtes concurrentes en lots traités par un unique thread.
+ * Un lot part dès qu'il est plein ou que la plus ancienne requête a attendu {@code maxDelayMillis}.
+ * <p>
+ * Une requête soumise appartient au regroupement : elle est rendue au traitement du lot, ou à la
+ * fonction de rejet si le regroupement s'arrête avant de la traiter. L'appelant ne doit donc pas
+ * libérer les ressources d'une requête soumise, même si l'attente de sa réponse expire.
+ *
+ * @param <T> Type des requêtes
+ * @param <R> Type des réponses
+ */
+public class MicroBatcher<T, R> implements AutoCloseable {
+
+    private record Pending<T, R>(T request, CompletableFuture<R> response) {
+    }
+
+    private final BlockingQueue<Pending<T, R>> queue = new LinkedBlockingQueue<>();
+    private final Function<List<T>, List<R>> processor;
+    private final Consumer<T> discard;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Thread worker;
+
+    private volatile boolean running = true;
+    private long batches;
+    private long requests;
+
+    /**
+     * @param processor Traitement d'un lot ; doit renvoyer une réponse par requête, dans l'ordre
+     * @param maxBatchSize Taille maximale d'un lot
+     * @param maxDelayMillis Budget de latence accordé pour compléter un lot
+     * @param discard Appelée avec chaque requête rejetée sans avoir été traitée
+     */
+    public MicroBatcher(Function<List<T>, List<R>> processor, int maxBatchSize, long maxDelayMillis,
+                        Consumer<T> discard) {
+        this.processor = processor;
+        this.discard = discard;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.worker = new Thread(this::run, "micro-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public MicroBatcher(Function<List<T>, List<R>> processor, int maxBatchSize, long maxDelayMillis) {
+        this(processor, maxBatchSize, maxDelayMillis, request -> {
+        });
+    }
+
+    /**
+     * Soumet une requête.
+     *
+     * @param request Requête à traiter
+     * @return La réponse, complétée lorsque le lot contenant la requête a été traité
+     */
+    public CompletableFuture<R> submit(T request) {
+        CompletableFuture<R> response = new CompletableFuture<>();
+        if (!running) {
+            reject(new Pending<>(request, response));
+            return response;
+        }
+        Pending<T, R> pending = new Pending<>(request, response);
+        queue.add(pending);
+        // Arrêt concurrent : le thread de traitement a pu vider la file avant cet ajout
+        if (!running && queue.remove(pending)) {
+            reject(pending);
+        }
+        return response;
+    }
+
+    private void run() {
+        List<Pending<T, R>> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Pending<T, R> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending<T, R> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Les requêtes restantes sont rejetées plutôt qu'abandonnées sans réponse
+        List<Pending<T, R>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(this::reject);
+    }
+
+    private void reject(Pending<T, R> pending) {
+        try {
+            discard.accept(pending.request());
+        } finally {
+            pending.response().completeExceptionally(new IllegalStateException("Le regroupement est arrêté"));
+        }
+    }
+
+    private void process(List<Pending<T, R>> batch) {
+        List<T> inputs = new ArrayList<>(batch.size());
+        for (Pending<T, R> pending : batch) {
+            inputs.add(pending.request());
+        }
+        try {
+            List<R> outputs = processor.apply(inputs);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).response().complete(outputs.get(i));
+            }
+        } catch (Exception e) {
+            for (Pending<T, R> pending : batch) {
+                pending.response().completeExceptionally(e);
+            }
+        }
+        synchronized (this) {
+            batches++;
+            requests += batch.size();
+        }
+    }
+
+    /**
+     * @return Taille moyenne des lots traités jusqu'ici
+     */
+    public synchronized double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) requests / batches;
+    }
+
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
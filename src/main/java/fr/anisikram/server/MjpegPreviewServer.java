@@ -0,0 +1,248 @@
+package fr.anisikram.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Aperçu vidéo au format MJPEG ({@code GET /preview}) servi sur l'interface locale.
+ * <p>
+ * La boucle principale se contente de proposer ses images : sans client connecté, ou si
+ * l'image précédente est trop récente pour la cadence d'aperçu, l'image est ignorée sans copie.
+ * Sinon elle est copiée dans un tampon et l'encodage JPEG a lieu sur un thread dédié ;
+ * une image non encodée à temps est remplacée par la suivante.
+ * <p>
+ * Les clients sont servis par des threads virtuels : les attentes passent par des
+ * {@link ReentrantLock} plutôt que par {@code synchronized}/{@code wait()}, qui bloqueraient
+ * le thread porteur pendant toute l'attente d'une image.
+ */
+public class MjpegPreviewServer implements AutoCloseable {
+
+    private static final String BOUNDARY = "frame";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Thread encoder;
+    private final long minIntervalNanos;
+    private final MatOfInt encodeParams;
+    private final AtomicInteger clients = new AtomicInteger();
+    private volatile boolean running = true;
+
+    // Image en attente d'encodage et image en cours d'encodage (échangées sous pendingLock)
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final Condition pendingReady = pendingLock.newCondition();
+    private Mat pending = new Mat();
+    private Mat encoding = new Mat();
+    private boolean hasPending;
+
+    // Dernière image encodée, diffusée aux clients (protégée par frameLock)
+    private final ReentrantLock frameLock = new ReentrantLock();
+    private final Condition frameReady = frameLock.newCondition();
+    private byte[] latestJpeg;
+    private long sequence;
+
+    // Statistiques (compteurs de la boucle principale, sauf encoded)
+    private long offered;
+    private long skippedNoClient;
+    private long skippedRate;
+    private long replaced;
+    private volatile long encoded;
+    private long lastAcceptedNanos;
+
+    /**
+     * @param port Port d'écoute, sur l'interface locale
+     * @param maxFps Cadence maximale de l'aperçu
+     * @param jpegQuality Qualité JPEG (0 à 100)
+     */
+    public MjpegPreviewServer(int port, double maxFps, int jpegQuality) throws IOException {
+        this.minIntervalNanos = (long) (1e9 / maxFps);
+        this.encodeParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, jpegQuality);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/preview", this::stream);
+        this.encoder = new Thread(this::encodeLoop, "preview-encoder");
+        this.encoder.setDaemon(true);
+    }
+
+    public MjpegPreviewServer(int port) throws IOException {
+        this(port, 10, 70);
+    }
+
+    public void start() {
+        encoder.start();
+        server.start();
+        System.out.println("Aperçu MJPEG disponible sur http://localhost:" + getPort() + "/preview");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Propose une image à l'aperçu. Appelé depuis la boucle principale ; ne bloque pas sur l'encodage.
+     *
+     * @param frame Image annotée (non modifiée, l'appelant en reste propriétaire)
+     * @return true si l'image a été retenue pour l'encodage
+     */
+    public boolean offer(Mat frame) {
+        offered++;
+        if (clients.get() == 0) {
+            skippedNoClient++;
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - lastAcceptedNanos < minIntervalNanos) {
+            skippedRate++;
+            return false;
+        }
+        lastAcceptedNanos = now;
+
+        pendingLock.lock();
+        try {
+            if (hasPending) {
+                replaced++;
+            }
+            frame.copyTo(pending);
+            hasPending = true;
+            pendingReady.signalAll();
+        } finally {
+            pendingLock.unlock();
+        }
+        return true;
+    }
+
+    private void encodeLoop() {
+        MatOfByte buffer = new MatOfByte();
+        try {
+            while (true) {
+                pendingLock.lock();
+                try {
+                    while (!hasPending && running) {
+                        pendingReady.await();
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    Mat ready = pending;
+                    pending = encoding;
+                    encoding = ready;
+                    hasPending = false;
+                } finally {
+                    pendingLock.unlock();
+                }
+
+                if (!Imgcodecs.imencode(".jpg", encoding, buffer, encodeParams)) {
+                    continue;
+                }
+                byte[] jpeg = buffer.toArray();
+                encoded++;
+                frameLock.lock();
+                try {
+                    latestJpeg = jpeg;
+                    sequence++;
+                    frameReady.signalAll();
+                } finally {
+                    frameLock.unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        clients.incrementAndGet();
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream os = exchange.getResponseBody();
+
+            // Séquence 0 : aucune image encodée pour le moment
+            long seen = 0;
+            while (running) {
+                byte[] jpeg;
+                frameLock.lock();
+                try {
+                    while (sequence == seen && running) {
+                        frameReady.await();
+                    }
+                    if (!running) {
+                        break;
+                    }
+                    jpeg = latestJpeg;
+                    seen = sequence;
+                } finally {
+                    frameLock.unlock();
+                }
+                String header = "--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: "
+                        + jpeg.length + "\r\n\r\n";
+                os.write(header.getBytes(StandardCharsets.US_ASCII));
+                os.write(jpeg);
+                os.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                os.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // Client déconnecté ou arrêt du serveur
+        } finally {
+            clients.decrementAndGet();
+        }
+    }
+
+    public int getClientCount() {
+        return clients.get();
+    }
+
+    public String getStatistics() {
+        return String.format("images proposées: %d, sans client: %d, limitées par la cadence: %d, "
+                + "remplacées avant encodage: %d, encodées: %d", offered, skippedNoClient, skippedRate, replaced, encoded);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        signalAll(pendingLock, pendingReady);
+        signalAll(frameLock, frameReady);
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            encoder.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pendingLock.lock();
+        try {
+            pending.release();
+            encoding.release();
+        } finally {
+            pendingLock.unlock();
+        }
+        encodeParams.release();
+    }
+
+    private static void signalAll(ReentrantLock lock, Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package fr.anisikram.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceRecognizer;
+import fr.anisikram.faces.RecognitionResult;
+import fr.anisikram.memory.MatTracker;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Service HTTP de détection, reconnaissance et enregistrement de visages.
+ * Chaque requête est traitée sur un thread virtuel ; les extractions de caractéristiques
+ * concurrentes sont regroupées en lots par un {@link MicroBatcher}.
+ *
+ * <ul>
+ *     <li>{@code POST /detect} : image JPEG/PNG, renvoie les rectangles des visages</li>
+ *     <li>{@code POST /recognize} : image JPEG/PNG, renvoie le nom et le score de chaque visage</li>
+ *     <li>{@code POST /enroll?name=...} : image JPEG/PNG contenant un visage à enregistrer</li>
+ *     <li>{@code GET /health} : état du service</li>
+ *     <li>{@code GET /metrics} : mémoire native des matrices OpenCV, au format texte de Prometheus
+ *     (renseignée lorsque le suivi {@link MatTracker} est activé)</li>
+ * </ul>
+ * Sur un réplica de la base (voir {@link #setReadOnly(String)}), {@code /enroll} est refusé :
+ * les enregistrements se font sur le primaire.
+ */
+public class RecognitionServer implements AutoCloseable {
+
+    // Taille maximale acceptée pour une image envoyée
+    private static final int MAX_UPLOAD_BYTES = 10 * 1024 * 1024;
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Visage à traiter par lot. Le lot devient propriétaire de {@code face} dès la soumission et la
+     * libère une fois traitée : la requête HTTP peut avoir abandonné l'attente entre-temps.
+     */
+    private record FaceJob(Mat face, String enrollName) {
+    }
+
+    /**
+     * Résultat d'un {@link FaceJob} : la reconnaissance d'un visage, ou la réussite d'un enregistrement
+     * (indépendante du nom enregistré, qui peut être n'importe quelle chaîne).
+     */
+    private record FaceOutcome(RecognitionResult recognition, boolean enrolled) {
+
+        static FaceOutcome recognized(RecognitionResult recognition) {
+            return new FaceOutcome(recognition, false);
+        }
+
+        static FaceOutcome enrollment(boolean success) {
+            return new FaceOutcome(null, success);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final FaceRecognizer faceRecognizer;
+    private final BlockingQueue<FaceDetector> detectors;
+    private final MicroBatcher<FaceJob, FaceOutcome> batcher;
+
+    // Adresse du primaire lorsque la base locale est un réplica en lecture seule (null sinon)
+    private volatile String primaryAddress;
+
+    /**
+     * @param port Port d'écoute
+     * @param faceRecognizer Reconnaisseur partagé (utilisé uniquement depuis le thread de regroupement)
+     * @param detectorCount Nombre de détecteurs Haar disponibles en parallèle
+     * @param maxBatchSize Taille maximale d'un lot d'extraction
+     * @param maxBatchDelayMillis Budget de latence accordé pour compléter un lot
+     */
+    public RecognitionServer(int port, FaceRecognizer faceRecognizer, int detectorCount,
+                             int maxBatchSize, long maxBatchDelayMillis) throws IOException {
+        this.faceRecognizer = faceRecognizer;
+        this.detectors = new ArrayBlockingQueue<>(detectorCount);
+        for (int i = 0; i < detectorCount; i++) {
+            detectors.add(new FaceDetector());
+        }
+        this.batcher = new MicroBatcher<>(this::processBatch, maxBatchSize, maxBatchDelayMillis,
+                job -> MatTracker.release(job.face()));
+
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/detect", exchange -> handle(exchange, this::detect));
+        this.server.createContext("/recognize", exchange -> handle(exchange, this::recognize));
+        this.server.createContext("/enroll", exchange -> handle(exchange, this::enroll));
+        this.server.createContext("/health", exchange -> handle(exchange, this::health));
+        this.server.createContext("/metrics", exchange -> handle(exchange, this::metrics, PROMETHEUS_TEXT));
+    }
+
+    public RecognitionServer(int port, FaceRecognizer faceRecognizer) throws IOException {
+        this(port, faceRecognizer, Runtime.getRuntime().availableProcessors(), 16, 5);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Service de reconnaissance démarré sur le port " + server.getAddress().getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Passe le service en lecture seule : la base suit celle d'un primaire, qui reçoit seul les
+     * enregistrements. Un ajout local serait perdu au prochain instantané du primaire.
+     *
+     * @param primaryAddress Adresse du primaire, rappelée dans les refus
+     */
+    public void setReadOnly(String primaryAddress) {
+        this.primaryAddress = primaryAddress;
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        String serve(HttpExchange exchange) throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        handle(exchange, endpoint, JSON);
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint, String contentType) throws IOException {
+        try (exchange) {
+            int status = 200;
+            String body;
+            try {
+                body = endpoint.serve(exchange);
+            } catch (HttpError e) {
+                status = e.status;
+                body = "{\"error\":\"" + escape(e.getMessage()) + "\"}";
+            } catch (Exception e) {
+                status = 500;
+                body = "{\"error\":\"Erreur interne\"}";
+                System.err.println("Erreur lors du traitement de " + exchange.getRequestURI() + ": " + e.getMessage());
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", status == 200 ? contentType : JSON);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    private String health(HttpExchange exchange) {
+        return "{\"status\":\"ok\",\"gallery\":" + faceRecognizer.getDatabaseSize()
+                + ",\"readOnly\":" + (primaryAddress != null)
+                + ",\"averageBatch\":" + batcher.getAverageBatchSize() + "}";
+    }
+
+    private String metrics(HttpExchange exchange) {
+        List<MatTracker.SiteStats> sites = MatTracker.snapshot();
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP opencv_mat_tracking_enabled Suivi de la mémoire native des matrices actif (1) ou non (0)\n")
+                .append("# TYPE opencv_mat_tracking_enabled gauge\n")
+                .append("opencv_mat_tracking_enabled ").append(MatTracker.isEnabled() ? 1 : 0).append('\n');
+
+        long liveBytes = 0;
+        long liveMats = 0;
+        for (MatTracker.SiteStats site : sites) {
+            liveBytes += site.liveBytes();
+            liveMats += site.live();
+        }
+        sb.append("# HELP opencv_native_bytes_live Octets natifs des matrices suivies encore vivantes\n")
+                .append("# TYPE opencv_native_bytes_live gauge\n")
+                .append("opencv_native_bytes_live ").append(liveBytes).append('\n');
+        sb.append("# HELP opencv_mats_live Matrices suivies encore vivantes\n")
+                .append("# TYPE opencv_mats_live gauge\n")
+                .append("opencv_mats_live ").append(liveMats).append('\n');
+
+        appendSiteMetric(sb, sites, "opencv_site_bytes_live", "gauge",
+                "Octets natifs vivants par site d'allocation", MatTracker.SiteStats::liveBytes);
+        appendSiteMetric(sb, sites, "opencv_mats_allocated_total", "counter",
+                "Matrices allouées par site d'allocation", MatTracker.SiteStats::allocated);
+        appendSiteMetric(sb, sites, "opencv_mats_released_total", "counter",
+                "Matrices libérées par site d'allocation", MatTracker.SiteStats::released);
+        appendSiteMetric(sb, sites, "opencv_mats_leaked_total", "counter",
+                "Matrices récupérées par le ramasse-miettes sans avoir été libérées", MatTracker.SiteStats::leaked);
+        return sb.toString();
+    }
+
+    private static void appendSiteMetric(StringBuilder sb, List<MatTracker.SiteStats> sites, String name, String type,
+                                         String help, ToLongFunction<MatTracker.SiteStats> value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (MatTracker.SiteStats site : sites) {
+            sb.append(name).append("{site=\"").append(escape(site.site())).append("\"} ")
+                    .append(value.applyAsLong(site)).append('\n');
+        }
+    }
+
+    private String detect(HttpExchange exchange) throws Exception {
+        Mat image = readImage(exchange);
+        try {
+            List<Rect> faces = detectFaces(image);
+            StringBuilder sb = new StringBuilder("{\"faces\":[");
+            for (int i = 0; i < faces.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendBox(sb.append('{'), faces.get(i)).append('}');
+            }
+            return sb.append("]}").toString();
+        } finally {
+            MatTracker.release(image);
+        }
+    }
+
+    private String recognize(HttpExchange exchange) throws Exception {
+        Mat image = readImage(exchange);
+        try {
+            List<Rect> faces = detectFaces(image);
+            List<CompletableFuture<FaceOutcome>> pending = new ArrayList<>(faces.size());
+            for (Rect face : faces) {
+                // Le visage extrait appartient au lot, qui le libère après traitement
+                pending.add(batcher.submit(new FaceJob(FaceDetector.extractFace(image, face, true), null)));
+            }
+
+            StringBuilder sb = new StringBuilder("{\"faces\":[");
+            for (int i = 0; i < faces.size(); i++) {
+                RecognitionResult result = pending.get(i).get(30, TimeUnit.SECONDS).recognition();
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendBox(sb.append('{'), faces.get(i))
+                        .append(",\"name\":\"").append(escape(result.name())).append('"')
+                        .append(",\"score\":").append(result.score()).append('}');
+            }
+            return sb.append("]}").toString();
+        } finally {
+            MatTracker.release(image);
+        }
+    }
+
+    private String enroll(HttpExchange exchange) throws Exception {
+        String primary = primaryAddress;
+        if (primary != null) {
+            throw new HttpError(409, "Base en lecture seule sur ce réplica : enregistrer sur le primaire " + primary);
+        }
+        String name = queryParameter(exchange, "name");
+        if (name == null || name.isBlank()) {
+            throw new HttpError(400, "Paramètre 'name' manquant");
+        }
+        Mat image = readImage(exchange);
+        try {
+            List<Rect> faces = detectFaces(image);
+            if (faces.size() != 1) {
+                throw new HttpError(422, "L'image doit contenir exactement un visage (" + faces.size() + " trouvés)");
+            }
+            Mat crop = FaceDetector.extractFace(image, faces.getFirst(), true);
+            String enrollName = name.trim();
+            FaceOutcome outcome = batcher.submit(new FaceJob(crop, enrollName)).get(30, TimeUnit.SECONDS);
+            if (!outcome.enrolled()) {
+                throw new HttpError(500, "Échec de l'ajout du visage");
+            }
+            return "{\"enrolled\":\"" + escape(enrollName) + "\",\"gallery\":" + faceRecognizer.getDatabaseSize() + "}";
+        } finally {
+            MatTracker.release(image);
+        }
+    }
+
+    /**
+     * Traitement d'un lot, toujours depuis le thread du {@link MicroBatcher} : le reconnaisseur
+     * n'est donc jamais utilisé de façon concurrente. Les visages du lot sont libérés ici.
+     */
+    private List<FaceOutcome> processBatch(List<FaceJob> jobs) {
+        try {
+            return processJobs(jobs);
+        } finally {
+            jobs.forEach(job -> MatTracker.release(job.face()));
+        }
+    }
+
+    private List<FaceOutcome> processJobs(List<FaceJob> jobs) {
+        List<FaceOutcome> results = new ArrayList<>(jobs.size());
+        List<Mat> queries = new ArrayList<>();
+        List<Integer> queryIndexes = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            FaceJob job = jobs.get(i);
+            if (job.enrollName() != null) {
+                boolean success = faceRecognizer.addFace(job.face(), job.enrollName());
+                results.add(FaceOutcome.enrollment(success));
+            } else {
+                results.add(null);
+                queries.add(job.face());
+                queryIndexes.add(i);
+            }
+        }
+        if (!queries.isEmpty()) {
+            List<RecognitionResult> recognized = faceRecognizer.recognizeBatch(queries);
+            for (int i = 0; i < recognized.size(); i++) {
+                results.set(queryIndexes.get(i), FaceOutcome.recognized(recognized.get(i)));
+            }
+        }
+        return results;
+    }
+
+    private List<Rect> detectFaces(Mat image) throws InterruptedException {
+        FaceDetector detector = detectors.take();
+        try {
+            return detector.detectFaces(image);
+        } finally {
+            detectors.add(detector);
+        }
+    }
+
+    private static Mat readImage(HttpExchange exchange) throws IOException, HttpError {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            throw new HttpError(405, "Méthode non autorisée");
+        }
+        byte[] data;
+        try (InputStream is = exchange.getRequestBody()) {
+            data = is.readNBytes(MAX_UPLOAD_BYTES + 1);
+        }
+        if (data.length > MAX_UPLOAD_BYTES) {
+            throw new HttpError(413, "Image trop volumineuse");
+        }
+        MatOfByte encoded = new MatOfByte(data);
+        Mat image = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+        encoded.release();
+        if (image.empty()) {
+            image.release();
+            throw new HttpError(400, "Image JPEG/PNG invalide");
+        }
+        return MatTracker.track(image, "RecognitionServer.readImage");
+    }
+
+    private static String queryParameter(HttpExchange exchange, String key) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(key)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static StringBuilder appendBox(StringBuilder sb, Rect face) {
+        return sb.append("\"x\":").append(face.x)
+                .append(",\"y\":").append(face.y)
+                .append(",\"width\":").append(face.width)
+                .append(",\"height\":").append(face.height);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        batcher.close();
+        executor.shutdown();
+        System.out.println("Service de reconnaissance arrêté.");
+    }
+
+    private static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package fr.anisikram.video;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Régulateur de la résolution et de la cadence de capture. Il suit la latence de bout en bout
+ * de chaque image (capture jusqu'à la fin du traitement) et descend d'un niveau lorsque le
+ * traitement ne tient plus la cadence, puis remonte lorsque la marge redevient confortable.
+ * Les seuils bas et haut distincts et les durées d'observation évitent les oscillations.
+ * Les images accumulées derrière une image plus lente que la cadence comptent dans la durée de
+ * dépassement : une forte surcharge fait descendre sans attendre autant d'images traitées.
+ * Un niveau refusé par la caméra est écarté : le niveau précédent est conservé et les changements
+ * suivants passent par-dessus le niveau refusé.
+ */
+public class AdaptiveCaptureController {
+
+    /**
+     * Niveau de capture.
+     *
+     * @param width Largeur
+     * @param height Hauteur
+     * @param fps Cadence demandée
+     */
+    public record Level(int width, int height, double fps) {
+
+        /**
+         * @return Durée d'une image à cette cadence, en millisecondes
+         */
+        public double framePeriodMillis() {
+            return 1000.0 / fps;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + (int) fps;
+        }
+    }
+
+    public static final List<Level> DEFAULT_LEVELS = List.of(
+            new Level(1280, 720, 30),
+            new Level(960, 540, 25),
+            new Level(640, 360, 20),
+            new Level(480, 270, 15));
+
+    // Lissage exponentiel de la latence
+    private static final double SMOOTHING = 0.1;
+
+    private final VideoCapturer videoCapturer;
+    private final List<Level> levels;
+    private final boolean[] refused;
+
+    // Seuils relatifs à la durée d'une image du niveau courant
+    private final double highWatermark;
+    private final double lowWatermark;
+
+    // Nombre d'images consécutives au-delà d'un seuil avant de changer de niveau (retard compris pour la descente)
+    private final int framesBeforeDown;
+    private final int framesBeforeUp;
+
+    // Images ignorées après un changement, le temps que la caméra se stabilise
+    private final int settleFrames;
+
+    private int levelIndex;
+    private double smoothedLatency = -1;
+    private int overBudget;
+    private int underBudget;
+    private int settling;
+    private long backlogFrames;
+    private long levelChanges;
+
+    /**
+     * @param videoCapturer Caméra à piloter
+     * @param levels Niveaux, du plus exigeant au plus léger
+     * @param highWatermark Part de la durée d'une image au-delà de laquelle on descend (ex. 0.9)
+     * @param lowWatermark Part de la durée d'une image en deçà de laquelle on remonte (ex. 0.5)
+     * @param framesBeforeDown Images consécutives en dépassement avant de descendre
+     * @param framesBeforeUp Images consécutives avec marge avant de remonter
+     */
+    public AdaptiveCaptureController(VideoCapturer videoCapturer, List<Level> levels, double highWatermark,
+                                     double lowWatermark, int framesBeforeDown, int framesBeforeUp) {
+        if (levels.isEmpty() || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("Niveaux ou seuils invalides");
+        }
+        this.videoCapturer = videoCapturer;
+        this.levels = List.copyOf(levels);
+        this.refused = new boolean[levels.size()];
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.framesBeforeDown = framesBeforeDown;
+        this.framesBeforeUp = framesBeforeUp;
+        this.settleFrames = 15;
+    }
+
+    public AdaptiveCaptureController(VideoCapturer videoCapturer) {
+        this(videoCapturer, DEFAULT_LEVELS, 0.9, 0.5, 15, 90);
+    }
+
+    /**
+     * Applique le niveau initial (le plus exigeant) à la caméra.
+     */
+    public void start() {
+        apply(0);
+    }
+
+    /**
+     * Enregistre la latence d'une image et change de niveau si nécessaire.
+     *
+     * @param captureNanos Instant où l'image était disponible ({@link FrameSource#getFrameNanos()}), pas celui
+     *                     où la boucle l'a reçue : le temps passé en attente compte dans la latence
+     * @param doneNanos Instant de la fin du traitement ({@link System#nanoTime()})
+     * @return true si le niveau a changé (l'appelant doit adapter ses paramètres dépendant de la résolution)
+     */
+    public boolean observe(long captureNanos, long doneNanos) {
+        double latency = (doneNanos - captureNanos) / 1e6;
+        double budget = getLevel().framePeriodMillis();
+
+        // Une image traitée plus lentement que la cadence laisse les suivantes s'accumuler
+        long backlog = latency > budget ? (long) (latency / budget) : 0;
+        backlogFrames += backlog;
+
+        if (settling > 0) {
+            settling--;
+            return false;
+        }
+        smoothedLatency = smoothedLatency < 0 ? latency : smoothedLatency + SMOOTHING * (latency - smoothedLatency);
+
+        if (smoothedLatency > budget * highWatermark) {
+            overBudget += 1 + backlog;
+            underBudget = 0;
+        } else if (smoothedLatency < budget * lowWatermark) {
+            underBudget++;
+            overBudget = 0;
+        } else {
+            overBudget = 0;
+            underBudget = 0;
+        }
+
+        if (overBudget >= framesBeforeDown) {
+            return move(1);
+        }
+        // Remontée plus prudente que la descente : la marge doit durer plus longtemps
+        if (underBudget >= framesBeforeUp) {
+            return move(-1);
+        }
+        return false;
+    }
+
+    /**
+     * Passe au premier niveau accepté par la caméra dans la direction donnée.
+     *
+     * @param direction 1 pour un niveau plus léger, -1 pour un niveau plus exigeant
+     * @return true si le niveau a changé
+     */
+    private boolean move(int direction) {
+        for (int index = levelIndex + direction; index >= 0 && index < levels.size(); index += direction) {
+            if (!refused[index] && apply(index)) {
+                return true;
+            }
+        }
+        // Aucun niveau disponible dans cette direction : on repart pour une période d'observation
+        resetObservation();
+        return false;
+    }
+
+    /**
+     * Demande un niveau à la caméra ; s'il est refusé, le niveau précédent est rétabli.
+     *
+     * @return true si la caméra a accepté le niveau
+     */
+    private boolean apply(int index) {
+        Level previous = getLevel();
+        Level level = levels.get(index);
+        resetObservation();
+        if (!videoCapturer.configure(level.width(), level.height(), level.fps())) {
+            refused[index] = true;
+            if (previous != level) {
+                System.err.println("Capture : niveau " + level + " écarté, " + previous + " conservé");
+                videoCapturer.configure(previous.width(), previous.height(), previous.fps());
+            }
+            return false;
+        }
+        levelIndex = index;
+        if (previous != level) {
+            levelChanges++;
+            System.out.println("Capture : " + previous + " -> " + level);
+        }
+        return true;
+    }
+
+    private void resetObservation() {
+        overBudget = 0;
+        underBudget = 0;
+        settling = settleFrames;
+        smoothedLatency = -1;
+    }
+
+    public Level getLevel() {
+        return levels.get(levelIndex);
+    }
+
+    /**
+     * @return Rapport entre la largeur réellement fournie par la caméra et celle du niveau le plus exigeant
+     */
+    public double getScale() {
+        int width = videoCapturer.getWidth();
+        if (width <= 0) {
+            width = getLevel().width();
+        }
+        return (double) width / levels.getFirst().width();
+    }
+
+    /**
+     * @return Niveaux refusés par la caméra
+     */
+    public List<Level> getRefusedLevels() {
+        List<Level> result = new ArrayList<>();
+        for (int i = 0; i < levels.size(); i++) {
+            if (refused[i]) {
+                result.add(levels.get(i));
+            }
+        }
+        return result;
+    }
+
+    public double getSmoothedLatencyMillis() {
+        return smoothedLatency;
+    }
+
+    public long getBacklogFrames() {
+        return backlogFrames;
+    }
+
+    public String getStatistics() {
+        return String.format("niveau: %s, latence lissée: %.1f ms, changements: %d, images en retard: %d, "
+                        + "niveaux refusés: %s",
+                getLevel(), smoothedLatency, levelChanges, backlogFrames, getRefusedLevels());
+    }
+}
@@ -0,0 +1,160 @@
+package fr.anisikram.video;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Enregistre les images brutes d'une source vidéo, avec leur instant de capture, dans un fichier
+ * compressé (deflate) relu par {@link ReplayFrameSource}.
+ * <p>
+ * L'appelant ne fait que copier les pixels ; la compression et l'écriture ont lieu sur un thread
+ * dédié. Si l'écriture ne suit pas, les images en excès sont abandonnées et comptées.
+ * <p>
+ * Format, entièrement compressé : {@code MAGIC}, {@code VERSION}, puis pour chaque image l'instant
+ * relatif à la première (ns), les lignes, colonnes, le type OpenCV, la taille et les octets des pixels.
+ */
+public class FrameRecorder implements AutoCloseable {
+
+    static final int MAGIC = 0x46524543; // "FREC"
+    static final int VERSION = 1;
+
+    // Nombre d'images en attente d'écriture au-delà duquel les nouvelles sont abandonnées
+    private static final int QUEUE_CAPACITY = 64;
+
+    private record RecordedFrame(long timestampNanos, int rows, int cols, int type, byte[] pixels) {
+    }
+
+    // Marque de fin de la file d'écriture
+    private static final RecordedFrame END = new RecordedFrame(0, 0, 0, 0, new byte[0]);
+
+    private final Path file;
+    private final DataOutputStream output;
+    private final BlockingQueue<RecordedFrame> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+
+    private long firstTimestamp = -1;
+    private long recorded;
+    private long dropped;
+    private volatile long rawBytes;
+    private volatile IOException failure;
+
+    /**
+     * @param file Fichier d'enregistrement (remplacé s'il existe)
+     */
+    public FrameRecorder(Path file) throws IOException {
+        this.file = file;
+        this.output = new DataOutputStream(new DeflaterOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)), new Deflater(Deflater.BEST_SPEED), 1 << 16));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        this.writer = new Thread(this::writeLoop, "frame-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Ajoute une image à l'enregistrement.
+     *
+     * @param frame Image à enregistrer (profondeur 8 bits, non modifiée)
+     * @param timestampNanos Instant de capture ({@link System#nanoTime()})
+     * @return false si l'image a été abandonnée
+     */
+    public boolean record(Mat frame, long timestampNanos) {
+        if (frame.empty() || CvType.depth(frame.type()) != CvType.CV_8U || failure != null) {
+            dropped++;
+            return false;
+        }
+        if (firstTimestamp < 0) {
+            firstTimestamp = timestampNanos;
+        }
+
+        Mat continuous = frame.isContinuous() ? frame : frame.clone();
+        byte[] pixels = new byte[(int) (continuous.total() * continuous.channels())];
+        continuous.get(0, 0, pixels);
+        if (continuous != frame) {
+            continuous.release();
+        }
+
+        if (!queue.offer(new RecordedFrame(timestampNanos - firstTimestamp,
+                frame.rows(), frame.cols(), frame.type(), pixels))) {
+            dropped++;
+            return false;
+        }
+        recorded++;
+        return true;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                RecordedFrame frame = queue.take();
+                if (frame == END) {
+                    return;
+                }
+                if (failure != null) {
+                    continue;
+                }
+                try {
+                    output.writeLong(frame.timestampNanos());
+                    output.writeInt(frame.rows());
+                    output.writeInt(frame.cols());
+                    output.writeInt(frame.type());
+                    output.writeInt(frame.pixels().length);
+                    output.write(frame.pixels());
+                    rawBytes += frame.pixels().length;
+                } catch (IOException e) {
+                    failure = e;
+                    System.err.println("Erreur d'écriture de l'enregistrement : " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getRecorded() {
+        return recorded;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public String getStatistics() {
+        String size;
+        try {
+            size = String.format("%.1f Mo (brut %.1f Mo)", Files.size(file) / 1e6, rawBytes / 1e6);
+        } catch (IOException e) {
+            size = "taille inconnue";
+        }
+        return String.format("images enregistrées: %d, abandonnées: %d, %s", recorded, dropped, size);
+    }
+
+    /**
+     * Termine l'écriture des images en attente et ferme le fichier.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            writer.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
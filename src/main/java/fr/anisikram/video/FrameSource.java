@@ -0,0 +1,42 @@
+package fr.anisikram.video;
+
+import org.opencv.core.Mat;
+
+/**
+ * Source d'images de la boucle principale : caméra ou enregistrement rejoué.
+ */
+public interface FrameSource {
+
+    /**
+     * @return Une nouvelle image (l'appelant en devient propriétaire), ou null si aucune image n'est disponible
+     */
+    Mat getFrame();
+
+    /**
+     * @return false lorsque la source est fermée ou épuisée
+     */
+    boolean isOpened();
+
+    /**
+     * Abandonne les images en attente dans la source, déjà périmées lorsque le traitement a pris
+     * du retard, afin que le prochain {@link #getFrame()} rende la plus récente.
+     *
+     * @param maxFrames Nombre maximal d'images abandonnées
+     * @return Le nombre d'images abandonnées
+     */
+    default int skipStaleFrames(int maxFrames) {
+        return 0;
+    }
+
+    /**
+     * Instant où la dernière image rendue par {@link #getFrame()} était disponible : une image
+     * restée en attente dans la source date d'avant l'appel qui l'a rendue.
+     *
+     * @return Instant {@link System#nanoTime()}, ou -1 s'il n'est pas connu
+     */
+    default long getFrameNanos() {
+        return -1;
+    }
+
+    void close();
+}
@@ -0,0 +1,123 @@
+package fr.anisikram.video;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Filtre de mouvement placé devant la détection de visages. Chaque image est réduite en
+ * niveaux de gris basse résolution et comparée à un fond moyenné ; la détection n'est lancée
+ * que si une part suffisante de l'image a changé, si des visages sont suivis, ou si l'image
+ * n'a pas été analysée depuis {@code maxSkipFrames} images.
+ */
+public class MotionGate {
+
+    // Largeur de l'image réduite utilisée pour la comparaison
+    private static final int ANALYSIS_WIDTH = 160;
+
+    // Écart de niveau de gris à partir duquel un pixel est considéré comme changé
+    private static final double PIXEL_THRESHOLD = 25;
+
+    // Vitesse d'adaptation du fond moyenné
+    private static final double LEARNING_RATE = 0.05;
+
+    // Part minimale de pixels changés pour déclencher la détection (0.002 = 0,2 %)
+    private final double sensitivity;
+
+    // Nombre maximal d'images consécutives sans détection
+    private final int maxSkipFrames;
+
+    private final Mat small = new Mat();
+    private final Mat background = new Mat();
+    private final Mat current = new Mat();
+    private final Mat diff = new Mat();
+
+    private int skippedInARow;
+    private double lastMotionRatio;
+    private long processedFrames;
+    private long skippedFrames;
+
+    public MotionGate(double sensitivity, int maxSkipFrames) {
+        this.sensitivity = sensitivity;
+        this.maxSkipFrames = maxSkipFrames;
+    }
+
+    public MotionGate() {
+        this(0.002, 50);
+    }
+
+    /**
+     * Indique si l'image doit passer par la détection et la reconnaissance.
+     *
+     * @param frame Image couleur ou niveaux de gris
+     * @param tracking true si des visages sont actuellement suivis
+     * @return true si l'image doit être analysée
+     */
+    public boolean shouldProcess(Mat frame, boolean tracking) {
+        boolean motion = detectMotion(frame);
+        if (motion || tracking || skippedInARow >= maxSkipFrames) {
+            skippedInARow = 0;
+            processedFrames++;
+            return true;
+        }
+        skippedInARow++;
+        skippedFrames++;
+        return false;
+    }
+
+    private boolean detectMotion(Mat frame) {
+        double scale = (double) ANALYSIS_WIDTH / frame.cols();
+        Imgproc.resize(frame, small, new Size(ANALYSIS_WIDTH, Math.max(1, Math.round(frame.rows() * scale))),
+                0, 0, Imgproc.INTER_AREA);
+        if (small.channels() > 1) {
+            Imgproc.cvtColor(small, small, Imgproc.COLOR_BGR2GRAY);
+        }
+        Imgproc.GaussianBlur(small, small, new Size(5, 5), 0);
+        small.convertTo(current, CvType.CV_32F);
+
+        if (background.empty() || background.size().width != current.size().width
+                || background.size().height != current.size().height) {
+            // Première image (ou changement de résolution) : elle devient le fond
+            current.copyTo(background);
+            lastMotionRatio = 1;
+            return true;
+        }
+
+        Core.absdiff(current, background, diff);
+        Imgproc.threshold(diff, diff, PIXEL_THRESHOLD, 1, Imgproc.THRESH_BINARY);
+        lastMotionRatio = Core.sumElems(diff).val[0] / diff.total();
+        Imgproc.accumulateWeighted(current, background, LEARNING_RATE);
+
+        return lastMotionRatio >= sensitivity;
+    }
+
+    /**
+     * @return Part des pixels changés lors de la dernière image
+     */
+    public double getLastMotionRatio() {
+        return lastMotionRatio;
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public String getStatistics() {
+        long total = processedFrames + skippedFrames;
+        return String.format("images analysées: %d, ignorées: %d (%.1f %%)",
+                processedFrames, skippedFrames, total == 0 ? 0 : 100.0 * skippedFrames / total);
+    }
+
+    public void release() {
+        small.release();
+        background.release();
+        current.release();
+        diff.release();
+    }
+}
@@ -0,0 +1,160 @@
+package fr.anisikram.video;
+
+import fr.anisikram.memory.MatTracker;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Rejoue un enregistrement produit par {@link FrameRecorder}, aussi vite que possible
+ * ou en respectant les instants de capture d'origine.
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    // Taille maximale acceptée pour une image : au-delà, l'enregistrement est considéré comme corrompu
+    private static final long MAX_FRAME_BYTES = 1L << 28;
+    private static final int MAX_CHANNELS = 4;
+
+    private final DataInputStream input;
+    private final boolean realtime;
+
+    private boolean opened = true;
+    private long startNanos = -1;
+    private long timestampNanos;
+    private long frames;
+
+    /**
+     * @param file Fichier d'enregistrement
+     * @param realtime true pour rejouer à la vitesse d'origine, false pour rejouer aussi vite que possible
+     */
+    public ReplayFrameSource(Path file, boolean realtime) throws IOException {
+        this.input = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), new Inflater(), 1 << 16));
+        this.realtime = realtime;
+        if (input.readInt() != FrameRecorder.MAGIC) {
+            input.close();
+            throw new IOException("Le fichier n'est pas un enregistrement d'images : " + file);
+        }
+        int version = input.readInt();
+        if (version != FrameRecorder.VERSION) {
+            input.close();
+            throw new IOException("Version d'enregistrement non prise en charge : " + version);
+        }
+    }
+
+    @Override
+    public Mat getFrame() {
+        if (!opened) {
+            return null;
+        }
+        try {
+            long timestamp = input.readLong();
+            int rows = input.readInt();
+            int cols = input.readInt();
+            int type = input.readInt();
+            int length = input.readInt();
+            checkHeader(rows, cols, type, length);
+            byte[] pixels = new byte[length];
+            input.readFully(pixels);
+
+            if (realtime) {
+                waitUntil(timestamp);
+            }
+            timestampNanos = timestamp;
+            frames++;
+
+            Mat frame = new Mat(rows, cols, type);
+            frame.put(0, 0, pixels);
+            return MatTracker.track(frame, "ReplayFrameSource.getFrame");
+        } catch (EOFException e) {
+            close();
+            return null;
+        } catch (IOException e) {
+            System.err.println("ERREUR : Lecture de l'enregistrement impossible : " + e.getMessage());
+            close();
+            return null;
+        }
+    }
+
+    /**
+     * Vérifie l'en-tête d'une image avant d'allouer ses pixels : un fichier tronqué ou corrompu
+     * termine le rejeu au lieu de provoquer une allocation démesurée ou une image incohérente.
+     */
+    private static void checkHeader(int rows, int cols, int type, int length) throws IOException {
+        if (rows <= 0 || cols <= 0 || length <= 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("En-tête d'image invalide (" + rows + "x" + cols + ", " + length + " octets)");
+        }
+        if (type < 0 || CvType.channels(type) > MAX_CHANNELS) {
+            throw new IOException("Type d'image invalide : " + type);
+        }
+        long elemSize;
+        try {
+            elemSize = CvType.ELEM_SIZE(type);
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("Type d'image invalide : " + type);
+        }
+        if ((long) rows * cols * elemSize != length) {
+            throw new IOException("Taille d'image incohérente : " + rows + "x" + cols + " de type "
+                    + CvType.typeToString(type) + " pour " + length + " octets");
+        }
+    }
+
+    private void waitUntil(long timestamp) {
+        if (startNanos < 0) {
+            startNanos = System.nanoTime() - timestamp;
+        }
+        long delay = startNanos + timestamp - System.nanoTime();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * En temps réel, une image rendue en retard était disponible dès son instant d'origine.
+     */
+    @Override
+    public long getFrameNanos() {
+        return realtime && startNanos >= 0 ? startNanos + timestampNanos : -1;
+    }
+
+    /**
+     * @return Instant de capture de la dernière image lue, relatif à la première (ns)
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    @Override
+    public boolean isOpened() {
+        return opened;
+    }
+
+    @Override
+    public void close() {
+        if (!opened) {
+            return;
+        }
+        opened = false;
+        try {
+            input.close();
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la fermeture de l'enregistrement : " + e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package fr.anisikram.video;
 
+import fr.anisikram.memory.MatTracker;
 import nu.pattern.OpenCV;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
@@ -8,13 +9,25 @@ import org.opencv.videoio.Videoio;
 
 import java.util.Objects;
 
-public class VideoCapturer {
+public class VideoCapturer implements FrameSource {
 
     // L'objet VideoCapture est l'interface principale pour accéder à la caméra
     private VideoCapture camera;
     private boolean opened = false;
 
+    // Une image a déjà été saisie par skipStaleFrames et reste à décoder
+    private boolean grabbed = false;
+
+    // Instant de disponibilité de la dernière image saisie, et de la dernière image rendue
+    private long grabbedNanos = -1;
+    private boolean grabbedFresh;
+    private long frameNanos = -1;
+
     public VideoCapturer(int deviceId) {
+        this(deviceId, 1280, 720);
+    }
+
+    public VideoCapturer(int deviceId, int width, int height) {
         // Initialiser la caméra avec l'ID fourni
         camera = new VideoCapture(deviceId);
 
@@ -32,13 +45,14 @@ public class VideoCapturer {
         }
 
         // Configurer la résolution de capture (640x480 est une résolution standard bien supportée)
-        camera.set(Videoio.CAP_PROP_FRAME_WIDTH, 1280);
-        camera.set(Videoio.CAP_PROP_FRAME_HEIGHT, 720);
+        camera.set(Videoio.CAP_PROP_FRAME_WIDTH, width);
+        camera.set(Videoio.CAP_PROP_FRAME_HEIGHT, height);
 
         opened = true;
         System.out.println("Caméra initialisée avec succès (ID: " + deviceId + ")");
     }
 
+    @Override
     public Mat getFrame() {
         if (!opened) {
             System.err.println("ERREUR : La caméra n'est pas ouverte.");
@@ -48,22 +62,116 @@ public class VideoCapturer {
         // Créer un objet Mat pour stocker l'image capturée
         Mat frame = new Mat();
 
-        // Capturer une image de la caméra
-        camera.read(frame);
+        // Capturer une image de la caméra (ou décoder celle déjà saisie)
+        if (!grabbed) {
+            grabTimed();
+        }
+        frameNanos = grabbedNanos;
+        camera.retrieve(frame);
+        grabbed = false;
 
         // Vérifier si l'image a été capturée avec succès
         if (frame.empty()) {
             System.err.println("ERREUR : Impossible de capturer l'image.");
+            frame.release();
             return null;
         }
 
-        return frame;
+        return MatTracker.track(frame, "VideoCapturer.getFrame");
+    }
+
+    /**
+     * Vide le tampon du pilote : les images qui y attendent sont saisies sans être décodées.
+     * Une saisie qui rend la main en moins d'une demi-période venait du tampon ; la première qui
+     * attend la caméra est une image fraîche, gardée pour le prochain {@link #getFrame()}.
+     */
+    @Override
+    public int skipStaleFrames(int maxFrames) {
+        if (!opened || grabbed) {
+            return 0;
+        }
+        int grabs = 0;
+        while (grabs <= maxFrames) {
+            if (!grabTimed()) {
+                break;
+            }
+            grabbed = true;
+            grabs++;
+            if (grabbedFresh) {
+                break;
+            }
+        }
+        // La dernière image saisie n'est pas abandonnée : getFrame la décodera
+        return Math.max(0, grabs - 1);
+    }
+
+    /**
+     * Saisit une image et estime l'instant où elle était disponible : une image fraîche à la fin
+     * de la saisie, une image du tampon au début.
+     *
+     * @return false si la saisie a échoué
+     */
+    private boolean grabTimed() {
+        double fps = getFps();
+        long halfPeriod = (long) (fps > 0 ? 0.5e9 / fps : 15_000_000);
+        long start = System.nanoTime();
+        if (!camera.grab()) {
+            grabbedNanos = start;
+            grabbedFresh = false;
+            return false;
+        }
+        long end = System.nanoTime();
+        grabbedFresh = end - start > halfPeriod;
+        grabbedNanos = grabbedFresh ? end : start;
+        return true;
+    }
+
+    @Override
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * Modifie la résolution et la cadence de capture pendant le fonctionnement.
+     *
+     * @param width Largeur demandée
+     * @param height Hauteur demandée
+     * @param fps Cadence demandée (images par seconde)
+     * @return true si la caméra a accepté la résolution demandée
+     */
+    public boolean configure(int width, int height, double fps) {
+        if (!opened) {
+            return false;
+        }
+        camera.set(Videoio.CAP_PROP_FRAME_WIDTH, width);
+        camera.set(Videoio.CAP_PROP_FRAME_HEIGHT, height);
+        camera.set(Videoio.CAP_PROP_FPS, fps);
+        boolean accepted = getWidth() == width && getHeight() == height;
+        if (!accepted) {
+            System.err.println("La caméra a refusé la résolution " + width + "x" + height
+                    + " (obtenu " + getWidth() + "x" + getHeight() + ")");
+        }
+        return accepted;
+    }
+
+    public int getWidth() {
+        return (int) camera.get(Videoio.CAP_PROP_FRAME_WIDTH);
+    }
+
+    public int getHeight() {
+        return (int) camera.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+    }
+
+    public double getFps() {
+        return camera.get(Videoio.CAP_PROP_FPS);
     }
 
+    @Override
     public boolean isOpened() {
         return opened && camera.isOpened();
     }
 
+    @Override
     public void close(){
         if(Objects.nonNull(camera)){
             camera.release();
@@ -0,0 +1,130 @@
+package fr.anisikram.faces;
+
+import fr.anisikram.memory.MatTracker;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Concordance des vecteurs produits par {@link OnnxEmbeddingEngine} avec ceux de FaceRecognizerSF
+ * ({@link OpenCvEmbeddingEngine}) pour les mêmes visages. Le modèle SFace n'est pas versionné :
+ * le test est ignoré s'il est absent.
+ *
+ * <pre>
+ * mvn test -Dtest=EmbeddingParityTest [-Dsface.model=chemin.onnx] [-Dparity.images=a.jpg,b.jpg]
+ * </pre>
+ * Sans images fournies, des visages synthétiques sont utilisés : les deux moteurs reçoivent la
+ * même entrée, ce qui suffit à comparer leurs calculs.
+ */
+class EmbeddingParityTest {
+
+    private static final String DEFAULT_MODEL = "models/face_recognition_sface_2021dec.onnx";
+
+    // Similarité cosinus minimale attendue entre les vecteurs des deux moteurs
+    private static final double PARITY_THRESHOLD = 0.999;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    void onnxRuntimeMatchesFaceRecognizerSf() throws Exception {
+        String modelPath = System.getProperty("sface.model", DEFAULT_MODEL);
+        assumeTrue(Files.isRegularFile(Path.of(modelPath)), "Modèle SFace absent : " + modelPath);
+
+        List<Mat> faces = loadFaces(System.getProperty("parity.images", ""));
+        FaceRecognizer reference = new FaceRecognizer(new OpenCvEmbeddingEngine(modelPath, ""), 0.6f);
+        FaceRecognizer onnx = new FaceRecognizer(new OnnxEmbeddingEngine(modelPath), 0.6f);
+        try {
+            for (int f = 0; f < faces.size(); f++) {
+                float[] expected = reference.extractFeature(faces.get(f));
+                float[] actual = onnx.extractFeature(faces.get(f));
+                assertNotNull(expected, "Extraction OpenCV impossible pour le visage " + f);
+                assertNotNull(actual, "Extraction ONNX Runtime impossible pour le visage " + f);
+                assertEquals(expected.length, actual.length, "Dimensions différentes");
+
+                double dot = 0;
+                double normExpected = 0;
+                double normActual = 0;
+                for (int i = 0; i < expected.length; i++) {
+                    dot += expected[i] * actual[i];
+                    normExpected += expected[i] * expected[i];
+                    normActual += actual[i] * actual[i];
+                }
+                double similarity = dot / Math.sqrt(normExpected * normActual);
+                assertTrue(similarity >= PARITY_THRESHOLD,
+                        "Similarité " + similarity + " pour le visage " + f + " (seuil " + PARITY_THRESHOLD + ")");
+            }
+        } finally {
+            reference.release();
+            onnx.release();
+            faces.forEach(MatTracker::release);
+        }
+    }
+
+    /**
+     * Premier visage détecté de chaque image donnée (l'image entière si aucun visage n'est trouvé),
+     * ou des visages synthétiques si aucune image n'est indiquée.
+     */
+    private static List<Mat> loadFaces(String paths) {
+        List<Mat> faces = new ArrayList<>();
+        if (paths.isBlank()) {
+            for (int seed = 0; seed < 4; seed++) {
+                faces.add(syntheticFace(seed));
+            }
+            return faces;
+        }
+        FaceDetector faceDetector = new FaceDetector();
+        try {
+            for (String path : paths.split(",")) {
+                Mat image = Imgcodecs.imread(path.trim(), Imgcodecs.IMREAD_COLOR);
+                assumeTrue(!image.empty(), "Image illisible : " + path);
+                List<Rect> detected = faceDetector.detectFaces(image);
+                if (detected.isEmpty()) {
+                    faces.add(image);
+                } else {
+                    faces.add(FaceDetector.extractFace(image, detected.getFirst(), true));
+                    image.release();
+                }
+            }
+        } finally {
+            faceDetector.release();
+        }
+        return faces;
+    }
+
+    private static Mat syntheticFace(int seed) {
+        Mat face = new Mat(224, 224, CvType.CV_8UC3, new Scalar(80 + 20 * seed, 110, 150));
+        Imgproc.ellipse(face, new Point(112, 112), new Size(70, 90), 0, 0, 360,
+                new Scalar(150, 170, 200 - 10 * seed), -1);
+        Imgproc.circle(face, new Point(85, 95), 8 + seed, new Scalar(40, 40, 40), -1);
+        Imgproc.circle(face, new Point(139, 95), 8 + seed, new Scalar(40, 40, 40), -1);
+        Imgproc.line(face, new Point(90, 160), new Point(134, 160 + 4 * seed), new Scalar(60, 60, 120), 4);
+        Mat noise = new Mat(face.size(), face.type());
+        Core.setRNGSeed(seed);
+        Core.randu(noise, 0, 20);
+        Core.add(face, noise, face);
+        noise.release();
+        return face;
+    }
+}
@@ -0,0 +1,139 @@
+package fr.anisikram.gallery;
+
+import fr.anisikram.faces.FaceRecognizer;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Réplication de la base avec plusieurs processus locaux : un primaire dans la JVM du test, des
+ * réplicas ({@link ReplicaProcess}) dans des JVM séparées. Des visages synthétiques sont enregistrés
+ * puis retirés sur le primaire ; un dernier réplica démarre après que le tampon du primaire a débordé
+ * et doit rattraper son retard par un instantané. Toutes les bases doivent finir identiques.
+ */
+class GalleryReplicationTest {
+
+    private static final int DIMENSION = 128;
+
+    // Délai maximal accordé aux réplicas pour rattraper le primaire
+    private static final long CONVERGENCE_TIMEOUT_MS = 20_000;
+
+    /**
+     * Dernier état annoncé par un réplica : séquence, nombre de visages et empreinte du contenu.
+     */
+    private static final class Replica {
+        final Process process;
+        volatile long sequence = -1;
+        volatile long size;
+        volatile long hash;
+
+        Replica(Process process) {
+            this.process = process;
+        }
+    }
+
+    @BeforeAll
+    static void loadOpenCv() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    void replicasConvergeToPrimary() throws Exception {
+        FaceRecognizer faceRecognizer = new FaceRecognizer(new NoEmbeddingEngine(), 0.6f);
+        List<Replica> replicas = new ArrayList<>();
+        try (GalleryReplicationPrimary primary = new GalleryReplicationPrimary(faceRecognizer, 0, 32)) {
+            primary.start();
+            for (int i = 0; i < 2; i++) {
+                replicas.add(startReplica(primary.getPort()));
+            }
+            assertTrue(waitFor(replicas, primary.getSequence()), "Instantané initial non reçu");
+
+            // Enregistrements et retraits sur le primaire
+            Random random = new Random(42);
+            for (int i = 0; i < 120; i++) {
+                if (i % 25 == 24) {
+                    faceRecognizer.removeIdentity("personne-" + random.nextInt(20));
+                } else {
+                    assertTrue(faceRecognizer.addFeature("personne-" + (i % 20), randomVector(random)));
+                }
+                Thread.sleep(2);
+            }
+
+            // Réplica tardif : le tampon a débordé, il doit repartir d'un instantané
+            replicas.add(startReplica(primary.getPort()));
+            long finalSequence = primary.getSequence();
+            assertTrue(waitFor(replicas, finalSequence), "Les réplicas n'ont pas rattrapé la séquence " + finalSequence);
+
+            long expectedHash = ReplicaProcess.contentHash(faceRecognizer.toGalleryFile());
+            for (Replica replica : replicas) {
+                assertEquals(faceRecognizer.getDatabaseSize(), replica.size);
+                assertEquals(expectedHash, replica.hash);
+            }
+        } finally {
+            replicas.forEach(replica -> replica.process.destroy());
+            faceRecognizer.release();
+        }
+    }
+
+    private static Replica startReplica(int port) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ReplicaProcess.class.getName(), "127.0.0.1:" + port)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        Replica replica = new Replica(process);
+        Thread reader = new Thread(() -> {
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (line.startsWith("APPLIED ")) {
+                        String[] parts = line.split(" ");
+                        replica.size = Long.parseLong(parts[2]);
+                        replica.hash = Long.parseLong(parts[3]);
+                        replica.sequence = Long.parseLong(parts[1]);
+                    }
+                }
+            } catch (IOException e) {
+                // Processus arrêté
+            }
+        }, "replica-output");
+        reader.setDaemon(true);
+        reader.start();
+        return replica;
+    }
+
+    /**
+     * Attend que tous les réplicas aient appliqué la séquence donnée.
+     *
+     * @return false si le délai est dépassé
+     */
+    private static boolean waitFor(List<Replica> replicas, long sequence) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CONVERGENCE_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (replicas.stream().allMatch(replica -> replica.sequence >= sequence)) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return LocalGalleryShard.normalize(vector);
+    }
+}
@@ -0,0 +1,24 @@
+package fr.anisikram.gallery;
+
+import fr.anisikram.faces.EmbeddingEngine;
+import org.opencv.core.Mat;
+
+/**
+ * Moteur factice : les tests de réplication n'enregistrent que des vecteurs déjà calculés.
+ */
+final class NoEmbeddingEngine implements EmbeddingEngine {
+
+    @Override
+    public float[] embed(Mat face) {
+        throw new UnsupportedOperationException("Pas d'extraction dans les tests de réplication");
+    }
+
+    @Override
+    public String getName() {
+        return "aucun";
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,42 @@
+package fr.anisikram.gallery;
+
+import fr.anisikram.faces.FaceRecognizer;
+import nu.pattern.OpenCV;
+
+import java.util.Arrays;
+
+/**
+ * Réplica lancé dans une JVM séparée par {@link GalleryReplicationTest} : après chaque instantané
+ * ou modification appliqué, il annonce sur la sortie standard une ligne
+ * {@code APPLIED <séquence> <visages> <empreinte>}.
+ *
+ * <pre>
+ * java fr.anisikram.gallery.ReplicaProcess &lt;hôte:port&gt;
+ * </pre>
+ */
+public class ReplicaProcess {
+
+    public static void main(String[] args) throws InterruptedException {
+        OpenCV.loadLocally();
+        FaceRecognizer faceRecognizer = new FaceRecognizer(new NoEmbeddingEngine(), 0.6f);
+        GalleryReplica replica = new GalleryReplica(faceRecognizer, GalleryReplica.parseAddress(args[0]));
+        replica.setApplyListener(sequence -> {
+            System.out.println("APPLIED " + sequence + " " + faceRecognizer.getDatabaseSize()
+                    + " " + contentHash(faceRecognizer.toGalleryFile()));
+            System.out.flush();
+        });
+        replica.start();
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Empreinte du contenu d'une base (noms et vecteurs, dans l'ordre).
+     */
+    static long contentHash(GalleryFile gallery) {
+        long hash = gallery.names().hashCode();
+        for (float[] feature : gallery.features()) {
+            hash = 31 * hash + Arrays.hashCode(feature);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,152 @@
+package fr.anisikram.memory;
+
+import fr.anisikram.faces.EmbeddingEngine;
+import fr.anisikram.faces.FaceDetector;
+import fr.anisikram.faces.FaceRecognizer;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Les matrices natives du chemin détection, extraction et reconnaissance doivent toutes être
+ * rendues : après de nombreux cycles, le nombre de matrices vivantes et de fuites ne bouge pas.
+ */
+class MatTrackerTest {
+
+    private static final int CYCLES = 200;
+
+    /**
+     * Moteur sans modèle : le vecteur est l'image réduite à 4x4, assez pour exercer la reconnaissance.
+     */
+    private static final class DownscaleEngine implements EmbeddingEngine {
+        @Override
+        public float[] embed(Mat face) {
+            Mat small = new Mat();
+            Imgproc.resize(face, small, new Size(4, 4), 0, 0, Imgproc.INTER_AREA);
+            float[] feature = new float[(int) (small.total() * small.channels())];
+            small.get(0, 0, feature);
+            small.release();
+            return feature;
+        }
+
+        @Override
+        public String getName() {
+            return "réduction";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private FaceDetector faceDetector;
+    private FaceRecognizer faceRecognizer;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        OpenCV.loadLocally();
+    }
+
+    @BeforeEach
+    void setUp() {
+        MatTracker.setEnabled(true);
+        MatTracker.reset();
+        faceDetector = new FaceDetector();
+        faceRecognizer = new FaceRecognizer(new DownscaleEngine(), 0.6f);
+    }
+
+    @AfterEach
+    void tearDown() {
+        faceRecognizer.release();
+        faceDetector.release();
+        MatTracker.reset();
+        MatTracker.setEnabled(false);
+    }
+
+    @Test
+    void detectExtractRecognizeCyclesDoNotLeak() throws InterruptedException {
+        Mat frame = syntheticFrame();
+        Rect fallback = new Rect(200, 120, 160, 160);
+        try {
+            // Premier cycle : enregistrement d'un visage, qui crée la matrice de la base
+            Mat enrolled = FaceDetector.extractFace(frame, fallback, true);
+            assertTrue(faceRecognizer.addFace(enrolled, "témoin"));
+            MatTracker.release(enrolled);
+            collectGarbage();
+            long baselineLive = MatTracker.liveCount();
+            long baselineLeaked = MatTracker.leakedCount();
+
+            for (int i = 0; i < CYCLES; i++) {
+                List<Rect> faces = faceDetector.detectFaces(frame);
+                Rect face = faces.isEmpty() ? fallback : faces.getFirst();
+                Mat crop = FaceDetector.extractFace(frame, face, true);
+                faceRecognizer.recognizeWithScore(crop);
+                MatTracker.release(crop);
+            }
+            collectGarbage();
+
+            assertEquals(baselineLive, MatTracker.liveCount(), "Matrices vivantes après " + CYCLES + " cycles");
+            assertEquals(baselineLeaked, MatTracker.leakedCount(), "Fuites après " + CYCLES + " cycles");
+            assertTrue(MatTracker.snapshot().stream()
+                            .anyMatch(stats -> stats.site().equals("FaceRecognizer.matchFeatures")
+                                    && stats.allocated() >= CYCLES),
+                    "Les temporaires de la comparaison doivent être suivis");
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Test
+    void submatricesDoNotCountSharedBytes() {
+        Mat owner = MatTracker.track(new Mat(100, 100, CvType.CV_8UC1), "test.owner");
+        Mat view = MatTracker.track(owner.submat(new Rect(0, 0, 50, 50)), "test.view");
+        try {
+            assertEquals(2, MatTracker.liveCount());
+            assertEquals(100 * 100, MatTracker.liveBytes());
+        } finally {
+            MatTracker.release(view);
+            MatTracker.release(owner);
+        }
+        assertEquals(0, MatTracker.liveCount());
+    }
+
+    /**
+     * Image synthétique : fond bruité et formes, pour que la détection parcoure une image non uniforme.
+     */
+    private static Mat syntheticFrame() {
+        Mat frame = new Mat(480, 640, CvType.CV_8UC3, new Scalar(90, 110, 130));
+        Imgproc.circle(frame, new Point(280, 200), 70, new Scalar(170, 180, 200), -1);
+        Imgproc.rectangle(frame, new Point(40, 300), new Point(200, 460),
+                new Scalar(30, 60, 200), -1);
+        Mat noise = new Mat(frame.size(), frame.type());
+        Core.randu(noise, 0, 40);
+        Core.add(frame, noise, frame);
+        noise.release();
+        return frame;
+    }
+
+    /**
+     * Laisse le ramasse-miettes vider les références faibles des matrices abandonnées.
+     */
+    private static void collectGarbage() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+    }
+}